@@ -0,0 +1,97 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Compares the throughput of the hash algorithms, both on single buffers
+ *  and on a whole working tree of files hashed the way status and add
+ *  hash them.
+ *
+ *  @author mak.skid
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HashBenchmark {
+
+    @Param({"sha1", "sha256", "xxh64"})
+    String algorithm;
+
+    HashAlgorithm hashAlgorithm;
+
+    @Setup
+    public void setUp() {
+        hashAlgorithm = HashAlgorithm.forName(algorithm);
+    }
+
+    /** SIZE bytes of content in memory. */
+    @State(Scope.Benchmark)
+    public static class Buffer {
+        @Param({"64", "4096", "1048576"})
+        int size;
+
+        byte[] content;
+
+        @Setup
+        public void setUp() {
+            content = new byte[size];
+            new Random(61).nextBytes(content);
+        }
+    }
+
+    /** A directory of TREEFILES files of 4 KiB each. */
+    @State(Scope.Benchmark)
+    public static class Tree {
+        @Param({"1000"})
+        int treeFiles;
+
+        Path root;
+        File[] files;
+
+        @Setup
+        public void setUp() throws IOException {
+            root = Files.createTempDirectory("gitlet-hash-bench");
+            Random random = new Random(61);
+            byte[] content = new byte[4096];
+            files = new File[treeFiles];
+            for (int i = 0; i < treeFiles; i += 1) {
+                random.nextBytes(content);
+                files[i] = root.resolve("file" + i + ".txt").toFile();
+                Files.write(files[i].toPath(), content);
+            }
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            try (Stream<Path> paths = Files.walk(root)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Benchmark
+    public String buffer(Buffer buffer) {
+        return hashAlgorithm.hash(buffer.content);
+    }
+
+    /** Hashes every file of the tree with its path, as blob ids are made.
+     *  Throughput is in trees per second. */
+    @Benchmark
+    public void tree(Tree tree, Blackhole blackhole) {
+        for (File file : tree.files) {
+            blackhole.consume(hashAlgorithm.hash(file.getPath(), file));
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package gitlet;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/** End-to-end benchmarks of the Repository commands on a synthetic
+ *  repository. Every invocation starts with an empty object cache, like a
+ *  freshly launched command.
+ *
+ *  @author mak.skid
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RepositoryBenchmark {
+
+    @Param({"100", "1000"})
+    int files;
+
+    @Param({"100"})
+    int commits;
+
+    @Param({"4"})
+    int branches;
+
+    SyntheticRepository repo;
+
+    @Setup(Level.Trial)
+    public void createRepository() {
+        repo = SyntheticRepository.create(files, commits, branches);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteRepository() {
+        repo.delete();
+    }
+
+    @Setup(Level.Invocation)
+    public void coldStart() {
+        SyntheticRepository.coldStart();
+    }
+
+    /** A modified file that has not been added yet. */
+    @State(Scope.Thread)
+    public static class ModifiedFile {
+        String name;
+
+        @Setup(Level.Invocation)
+        public void modify(RepositoryBenchmark bench) {
+            name = SyntheticRepository.fileName(0);
+            bench.repo.rewrite(name);
+        }
+    }
+
+    /** A modified file that has been added, ready to be committed. */
+    @State(Scope.Thread)
+    public static class StagedChange {
+        @Setup(Level.Invocation)
+        public void stage(RepositoryBenchmark bench) {
+            String name = SyntheticRepository.fileName(0);
+            bench.repo.rewrite(name);
+            Repository.add(name);
+            SyntheticRepository.coldStart();
+        }
+    }
+
+    /** Alternates between master and the first branch, so that every
+     *  checkout actually switches branches. */
+    @State(Scope.Thread)
+    public static class OtherBranch {
+        boolean onMaster = true;
+        String name;
+
+        @Setup(Level.Invocation)
+        public void flip() {
+            name = onMaster ? SyntheticRepository.branchName(0) : "master";
+            onMaster = !onMaster;
+        }
+    }
+
+    /** Puts master back where it was before the previous merge. */
+    @State(Scope.Thread)
+    public static class UnmergedMaster {
+        @Setup(Level.Invocation)
+        public void resetMaster(RepositoryBenchmark bench) {
+            Repository.reset(bench.repo.masterHeadId);
+            SyntheticRepository.coldStart();
+        }
+    }
+
+    @Benchmark
+    public void add(ModifiedFile file) {
+        Repository.add(file.name);
+    }
+
+    @Benchmark
+    public void commit(StagedChange change) {
+        Repository.commit("benchmark commit");
+    }
+
+    @Benchmark
+    public void status() {
+        Repository.status();
+    }
+
+    @Benchmark
+    public void checkoutBranch(OtherBranch branch) {
+        Repository.checkoutBranch(branch.name);
+    }
+
+    @Benchmark
+    public void log() {
+        Repository.log();
+    }
+
+    @Benchmark
+    public void logPath() {
+        Repository.log(SyntheticRepository.fileName(0));
+    }
+
+    @Benchmark
+    public void find() {
+        Repository.find("commit 1");
+    }
+
+    @Benchmark
+    public void merge(UnmergedMaster master) {
+        Repository.merge(SyntheticRepository.branchName(0));
+    }
+}
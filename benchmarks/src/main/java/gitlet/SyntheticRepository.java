@@ -0,0 +1,124 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/** A throwaway Gitlet repository with FILES files, COMMITS commits on
+ *  master and BRANCHES branches, used as the fixture of the benchmarks.
+ *
+ *  Repository derives all of its paths from user.dir when it is first
+ *  loaded, so a fork can only ever host one synthetic repository, and it
+ *  must be created before anything touches Repository. JMH runs every
+ *  benchmark in its own fork, which makes this fit.
+ *
+ *  Layout: every commit on master changes one of the files. Branch bK
+ *  forks off the last of them and changes file K; after that master gets
+ *  one more commit changing the last file, so merging any branch into
+ *  master is a real three-way merge rather than a fast-forward.
+ *
+ *  @author mak.skid
+ */
+final class SyntheticRepository {
+
+    /** Size of every generated file. */
+    static final int FILE_SIZE = 1024;
+
+    final Path root;
+    final int files;
+    final int commits;
+    final int branches;
+
+    /** Id of the head of master once the repository is built. */
+    final String masterHeadId;
+
+    private final Random random = new Random(61);
+    private final PrintStream stdout = System.out;
+
+    private SyntheticRepository(int files, int commits, int branches) throws IOException {
+        if (files < branches + 2) {
+            throw new IllegalArgumentException("need at least branches + 2 files");
+        }
+        this.files = files;
+        this.commits = commits;
+        this.branches = branches;
+        root = Files.createTempDirectory("gitlet-bench");
+        System.setProperty("user.dir", root.toString());
+        /* commands report on stdout; keep it out of the benchmark output */
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        for (int i = 0; i < files; i += 1) {
+            rewrite(fileName(i));
+        }
+        Repository.init();
+        for (int i = 0; i < files; i += 1) {
+            Repository.add(fileName(i));
+        }
+        Repository.commit("commit 0");
+        for (int c = 1; c < commits; c += 1) {
+            commitChange(c % files, "commit " + c);
+        }
+        for (int b = 0; b < branches; b += 1) {
+            Repository.branch(branchName(b));
+            Repository.checkoutBranch(branchName(b));
+            commitChange(b, "branch commit " + b);
+            Repository.checkoutBranch("master");
+        }
+        commitChange(files - 1, "master after branches");
+        masterHeadId = Repository.getCurrBranchHeadCommitId();
+    }
+
+    static SyntheticRepository create(int files, int commits, int branches) {
+        try {
+            return new SyntheticRepository(files, commits, branches);
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+    }
+
+    static String fileName(int i) {
+        return "file" + i + ".txt";
+    }
+
+    static String branchName(int b) {
+        return "b" + b;
+    }
+
+    /** Gives file NAME fresh random content. */
+    void rewrite(String name) {
+        byte[] content = new byte[FILE_SIZE];
+        random.nextBytes(content);
+        try {
+            Files.write(root.resolve(name), content);
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+    }
+
+    /** Changes file number I and commits it with MESSAGE. */
+    void commitChange(int i, String message) {
+        rewrite(fileName(i));
+        Repository.add(fileName(i));
+        Repository.commit(message);
+    }
+
+    /** Forgets every cached object, as a freshly started command would. */
+    static void coldStart() {
+        ObjectCache.SHARED.clear();
+    }
+
+    /** Removes the repository and restores stdout. */
+    void delete() {
+        System.setOut(stdout);
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+    }
+}
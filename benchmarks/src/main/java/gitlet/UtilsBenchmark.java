@@ -0,0 +1,122 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Formatter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/** Micro-benchmarks of the hashing, serialization and formatting helpers
+ *  that every command leans on.
+ *
+ *  @author mak.skid
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UtilsBenchmark {
+
+    Commit commit;
+
+    @Setup
+    public void setUp() {
+        commit = new Commit();
+    }
+
+    /** A file path and SIZE bytes of file content, as hashed for a blob,
+     *  both in memory and in a temporary file. */
+    @State(Scope.Benchmark)
+    public static class FileContent {
+        @Param({"64", "4096", "1048576"})
+        int size;
+
+        String path;
+        byte[] content;
+        File file;
+
+        @Setup
+        public void setUp() throws IOException {
+            path = "/home/gitlet/bench/file.txt";
+            content = new byte[size];
+            new Random(61).nextBytes(content);
+            file = File.createTempFile("gitlet-bench", ".bin");
+            Files.write(file.toPath(), content);
+        }
+
+        @TearDown
+        public void tearDown() {
+            file.delete();
+        }
+    }
+
+    /** Utils.sha1 as it was before hashing reused per-thread digests: a new
+     *  MessageDigest per call and a Formatter for the hex output. Kept as
+     *  the baseline the current implementation is compared against. */
+    static String legacySha1(Object... vals) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            for (Object val : vals) {
+                if (val instanceof byte[]) {
+                    md.update((byte[]) val);
+                } else if (val instanceof String) {
+                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+                } else {
+                    throw new IllegalArgumentException("improper type to sha1");
+                }
+            }
+            Formatter result = new Formatter();
+            for (byte b : md.digest()) {
+                result.format("%02x", b);
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    @Benchmark
+    public String sha1Legacy(FileContent file) {
+        return legacySha1(file.path, file.content);
+    }
+
+    @Benchmark
+    public String sha1(FileContent file) {
+        return Utils.sha1(file.path, file.content);
+    }
+
+    @Benchmark
+    public String sha1Varargs(FileContent file) {
+        return Utils.sha1((Object) file.path, file.content);
+    }
+
+    /** Hashing a working file the old way: read it whole, then hash. */
+    @Benchmark
+    public String sha1FileLegacy(FileContent file) {
+        return legacySha1(file.path, Utils.readContents(file.file));
+    }
+
+    /** Hashing a working file streamed through the per-thread buffer. */
+    @Benchmark
+    public String sha1File(FileContent file) {
+        return Utils.sha1(file.path, file.file);
+    }
+
+    @Benchmark
+    public byte[] serializeCommit() {
+        return Utils.serialize(commit);
+    }
+
+    @Benchmark
+    public String commitTimestamp() {
+        return commit.getTimestamp();
+    }
+}
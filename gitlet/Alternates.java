@@ -0,0 +1,101 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** Other repositories whose objects a repository reads as if they were
+ *  its own, listed in its .gitlet/alternates.
+ *
+ *  An object is looked up in every alternate, in order, before the
+ *  repository's own directories, so a repository set up with clone
+ *  --shared on top of a large shared store only ever writes the objects
+ *  it creates itself. Alternates are never written to, and objects found
+ *  there are never copied, swept or repacked. A repository whose
+ *  alternate collects garbage may lose objects it relied on.
+ *
+ *  @author mak.skid
+ */
+class Alternates {
+
+    private static List<File> local;
+
+    /** Returns the .gitlet directories holding the objects of the alternates
+     *  of this repository, read once per process. */
+    static synchronized List<File> dirs() {
+        if (local == null) {
+            local = of(COMMON_DIR);
+        }
+        return local;
+    }
+
+    /** Returns the .gitlet directories holding the objects of the alternates
+     *  of the repository whose shared .gitlet directory is COMMONDIR. */
+    static List<File> of(File commonDir) {
+        List<File> dirs = new ArrayList<>();
+        File alternates = join(commonDir, ALTERNATES.getName());
+        if (alternates.isFile()) {
+            for (String line : readContentsAsString(alternates).split("\n")) {
+                if (!line.isEmpty()) {
+                    dirs.add(commonDir(new File(line)));
+                }
+            }
+        }
+        return dirs;
+    }
+
+    /** Returns the file holding the object whose own file would be FILE:
+     *  that of the first alternate holding it, or FILE. */
+    static File locate(File file) {
+        return locate(COMMON_DIR, dirs(), file);
+    }
+
+    /** Returns the file holding the object whose own file in the repository
+     *  with shared .gitlet directory COMMONDIR and alternates DIRS would be
+     *  FILE: that of the first alternate holding it, or FILE. */
+    static File locate(File commonDir, List<File> dirs, File file) {
+        if (dirs.isEmpty()) {
+            return file;
+        }
+        Path relative = commonDir.toPath().relativize(file.toPath());
+        for (File dir : dirs) {
+            File alternate = dir.toPath().resolve(relative).toFile();
+            if (alternate.isFile()) {
+                return alternate;
+            }
+        }
+        return file;
+    }
+
+    /** Returns DIR, a directory of this repository, followed by the same
+     *  directory of every alternate. */
+    static List<File> withAlternates(File dir) {
+        List<File> result = new ArrayList<>(List.of(dir));
+        Path relative = COMMON_DIR.toPath().relativize(dir.toPath());
+        for (File alternate : dirs()) {
+            result.add(alternate.toPath().resolve(relative).toFile());
+        }
+        return result;
+    }
+
+    /** Adds the repository whose .gitlet directory is GITLETDIR. */
+    static synchronized void add(File gitletDir) {
+        List<String> paths = new ArrayList<>();
+        if (ALTERNATES.isFile()) {
+            for (String line : readContentsAsString(ALTERNATES).split("\n")) {
+                if (!line.isEmpty()) {
+                    paths.add(line);
+                }
+            }
+        }
+        if (!paths.contains(gitletDir.getPath())) {
+            paths.add(gitletDir.getPath());
+            writeContents(ALTERNATES, String.join("\n", paths) + "\n");
+        }
+        local = null;
+    }
+}
@@ -0,0 +1,167 @@
+package gitlet;
+
+import java.io.File;
+import java.util.*;
+
+import static gitlet.Repository.BISECT_DIR;
+import static gitlet.Utils.*;
+
+/** The state of a bisection, kept in .gitlet/bisect: the branch it was
+ *  started from, the bad commit and the good and skipped commits, one id
+ *  per line. While it lasts, HEAD is on the branch bisect, which is moved
+ *  to every commit to test.
+ *
+ *  The candidates are the ancestors of the bad commit, itself included,
+ *  that are not ancestors of a good one. The next commit to test is the
+ *  candidate whose ancestors among the candidates come closest to half of
+ *  them, so either answer about it rules out about half. Ancestors are
+ *  counted with one bit set per candidate, built parents first, so merge
+ *  commits whose parents share history count it only once.
+ *
+ *  @author mak.skid
+ */
+class Bisect {
+
+    /** The branch HEAD is on while bisecting. */
+    static final String BRANCH = "bisect";
+
+    private static final File START = join(BISECT_DIR, "start");
+    private static final File BAD = join(BISECT_DIR, "bad");
+    private static final File GOOD = join(BISECT_DIR, "good");
+    private static final File SKIP = join(BISECT_DIR, "skip");
+
+    static boolean isActive() {
+        return START.isFile();
+    }
+
+    /** Starts a bisection from the branch BRANCHNAME. */
+    static void start(String branchName) {
+        BISECT_DIR.mkdirs();
+        writeContents(START, branchName);
+    }
+
+    /** Returns the branch the bisection was started from. */
+    static String startBranch() {
+        return readContentsAsString(START);
+    }
+
+    /** Returns the bad commit id, or null if none is known yet. */
+    static String bad() {
+        return BAD.isFile() ? readContentsAsString(BAD) : null;
+    }
+
+    static void setBad(String commitId) {
+        writeContents(BAD, commitId);
+    }
+
+    static List<String> goods() {
+        return lines(GOOD);
+    }
+
+    static void addGood(String commitId) {
+        append(GOOD, commitId);
+    }
+
+    static Set<String> skipped() {
+        return new HashSet<>(lines(SKIP));
+    }
+
+    static void addSkipped(String commitId) {
+        append(SKIP, commitId);
+    }
+
+    /** Forgets the bisection. */
+    static void clear() {
+        for (File file : List.of(START, BAD, GOOD, SKIP)) {
+            file.delete();
+        }
+        BISECT_DIR.delete();
+    }
+
+    /** Returns the ids of the commits that may be the first bad one,
+     *  parents before children, so the bad commit comes last. */
+    static List<String> candidates() {
+        Set<String> excluded = new HashSet<>();
+        Deque<String> toVisit = new ArrayDeque<>(goods());
+        while (!toVisit.isEmpty()) {
+            String id = toVisit.pop();
+            if (excluded.add(id)) {
+                toVisit.addAll(Shallow.parentsOf(Commit.find(id)));
+            }
+        }
+        List<String> order = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        Set<String> added = new HashSet<>();
+        /* an iterative depth-first walk that adds a commit once every
+           candidate parent has been added */
+        Deque<String> stack = new ArrayDeque<>(List.of(bad()));
+        while (!stack.isEmpty()) {
+            String id = stack.peek();
+            if (excluded.contains(id) || added.contains(id)) {
+                stack.pop();
+                continue;
+            }
+            if (seen.add(id)) {
+                for (String parentId : Shallow.parentsOf(Commit.find(id))) {
+                    if (!excluded.contains(parentId) && !seen.contains(parentId)) {
+                        stack.push(parentId);
+                    }
+                }
+            } else {
+                stack.pop();
+                added.add(id);
+                order.add(id);
+            }
+        }
+        return order;
+    }
+
+    /** Returns the candidate to test next among CANDIDATES, ordered as
+     *  candidates() returns them, leaving out the bad commit and SKIPPED,
+     *  or null if there is none. */
+    static String midpoint(List<String> candidates, Set<String> skipped) {
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < candidates.size(); i += 1) {
+            positions.put(candidates.get(i), i);
+        }
+        BitSet[] ancestors = new BitSet[candidates.size()];
+        String best = null;
+        int bestScore = -1;
+        for (int i = 0; i < candidates.size(); i += 1) {
+            String id = candidates.get(i);
+            ancestors[i] = new BitSet(candidates.size());
+            ancestors[i].set(i);
+            for (String parentId : Shallow.parentsOf(Commit.find(id))) {
+                Integer parent = positions.get(parentId);
+                if (parent != null) {
+                    ancestors[i].or(ancestors[parent]);
+                }
+            }
+            int count = ancestors[i].cardinality();
+            int score = Math.min(count, candidates.size() - count);
+            if (i < candidates.size() - 1 && !skipped.contains(id) && score > bestScore) {
+                best = id;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    private static List<String> lines(File file) {
+        List<String> lines = new ArrayList<>();
+        if (file.isFile()) {
+            for (String line : readContentsAsString(file).split("\n")) {
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+
+    private static void append(File file, String line) {
+        List<String> lines = lines(file);
+        lines.add(line);
+        writeContents(file, String.join("\n", lines) + "\n");
+    }
+}
@@ -0,0 +1,116 @@
+package gitlet;
+
+import java.util.*;
+
+/** Finds the commit that last changed every line of a file.
+ *
+ *  Every line of the file at the head commit starts out charged to that
+ *  commit. Commits are then visited newest first, each once, with all the
+ *  lines charged to it. If a parent has the same blob for the file, every
+ *  line passes to that parent without the blob being read. Otherwise the
+ *  blob is diffed with each parent's in turn, the lines a parent kept pass
+ *  to it, and whatever no parent kept stays with the commit. The lines of
+ *  every blob are read once per run.
+ *
+ *  @author mak.skid
+ */
+class Blame {
+
+    private final String path;
+    private final String[] lines;
+    private final Commit[] owners;
+    private final Map<String, String[]> blobLines = new HashMap<>();
+
+    /** Lines charged to each commit still to visit: pairs of the line of
+     *  the head file and the line of that commit's blob. */
+    private final Map<String, List<int[]>> pending = new HashMap<>();
+    private final PriorityQueue<Commit> toVisit =
+            new PriorityQueue<>(Comparator.comparing(Commit::getDate).reversed());
+
+    /** Blames the file tracked at PATH in HEAD, which must track it. */
+    Blame(String path, Commit head) {
+        this.path = path;
+        lines = linesOf(head.getBlobId(path));
+        owners = new Commit[lines.length];
+        List<int[]> all = new ArrayList<>(lines.length);
+        for (int i = 0; i < lines.length; i += 1) {
+            all.add(new int[] {i, i});
+        }
+        charge(head, all);
+        while (!toVisit.isEmpty()) {
+            visit(toVisit.poll());
+        }
+    }
+
+    private String[] linesOf(String blobId) {
+        return blobLines.computeIfAbsent(blobId,
+                id -> LineDiff.lines(Blob.fromFile(id).getContent()));
+    }
+
+    private void charge(Commit commit, List<int[]> charged) {
+        if (charged.isEmpty()) {
+            return;
+        }
+        List<int[]> existing = pending.get(commit.getId());
+        if (existing == null) {
+            pending.put(commit.getId(), new ArrayList<>(charged));
+            toVisit.add(commit);
+        } else {
+            existing.addAll(charged);
+        }
+    }
+
+    private void visit(Commit commit) {
+        List<int[]> charged = pending.remove(commit.getId());
+        if (charged == null) {
+            return;
+        }
+        String blobId = commit.getBlobId(path);
+        List<Commit> parents = new ArrayList<>();
+        for (String parentId : Shallow.parentsOf(commit)) {
+            Commit parent = Commit.find(parentId);
+            if (blobId.equals(parent.getBlobId(path))) {
+                charge(parent, charged);
+                return;
+            }
+            parents.add(parent);
+        }
+        for (Commit parent : parents) {
+            String parentBlobId = parent.getBlobId(path);
+            if (parentBlobId == null || charged.isEmpty()) {
+                continue;
+            }
+            int[] kept = LineDiff.match(linesOf(parentBlobId), linesOf(blobId));
+            List<int[]> passed = new ArrayList<>();
+            List<int[]> remaining = new ArrayList<>();
+            for (int[] line : charged) {
+                int parentLine = kept[line[1]];
+                if (parentLine >= 0) {
+                    passed.add(new int[] {line[0], parentLine});
+                } else {
+                    remaining.add(line);
+                }
+            }
+            charge(parent, passed);
+            charged = remaining;
+        }
+        for (int[] line : charged) {
+            owners[line[0]] = commit;
+        }
+    }
+
+    /** Prints every line of the file with the commit that last changed it. */
+    void print() {
+        StringBuilder sb = new StringBuilder();
+        int width = Integer.toString(lines.length).length();
+        for (int i = 0; i < lines.length; i += 1) {
+            Commit owner = owners[i];
+            sb.append(Shallow.isBoundary(owner.getId()) ? "^" : "")
+              .append(owner.getId(), 0, 8)
+              .append(" (").append(owner.getTimestamp()).append(' ')
+              .append(String.format("%" + width + "d", i + 1)).append(") ")
+              .append(lines[i]).append('\n');
+        }
+        System.out.print(sb);
+    }
+}
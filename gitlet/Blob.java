@@ -1,21 +1,48 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.Serializable;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
 
 import static gitlet.Repository.OBJECTS_DIR;
 import static gitlet.Utils.*;
 
-public class Blob implements Serializable {
+public class Blob implements Dumpable {
+    private static final long serialVersionUID = -7255592958984950877L;
+
+    /** files at least this large are stored as a list of content-defined chunks. */
+    static final int CHUNKING_THRESHOLD = 1024 * 1024;
+
     private String id;
     private byte[] content;
     private File file;
+    /** ids of the chunks holding the content of a chunked blob, null otherwise. */
+    private List<String> chunkIds;
 
+    /** Returns a blob of the contents of SOURCEFILE. A file of at least
+     *  CHUNKING_THRESHOLD bytes is streamed: its chunks are stored and its
+     *  id is taken from the same reads, and its content is not kept. */
     public Blob(File sourceFile) {
-        String filePath = sourceFile.getPath();
-        content = readContents(sourceFile);
-        id = sha1(filePath, content);
+        String filePath = WorkingTree.key(sourceFile);
+        if (sourceFile.length() < CHUNKING_THRESHOLD) {
+            content = readContents(sourceFile);
+            id = hash(filePath, content);
+        } else {
+            HashAlgorithm.Incremental whole = HashAlgorithm.current().start(filePath);
+            chunkIds = Chunker.store(sourceFile, whole);
+            id = whole.finish();
+        }
+        file = join(OBJECTS_DIR, id);
+    }
+
+    /** Returns a blob of CONTENT for the file tracked at KEY. */
+    public Blob(String key, byte[] content) {
+        this.content = content;
+        id = hash(key, content);
         file = join(OBJECTS_DIR, id);
     }
 
@@ -24,25 +51,87 @@ public class Blob implements Serializable {
     }
 
     public static String generateId(File srcFile) {
-        String filePath = srcFile.getPath();
-        byte[] fileContent = readContents(srcFile);
-        return sha1(filePath, fileContent);
+        return hash(WorkingTree.key(srcFile), srcFile);
     }
 
     public void create() {
+        if (chunkIds == null && content.length < CHUNKING_THRESHOLD) {
+            writeObject(file, this);
+            return;
+        }
+        /* only the chunk list goes into the blob file itself */
+        byte[] wholeContent = content;
+        if (chunkIds == null) {
+            chunkIds = Chunker.store(wholeContent);
+        }
+        content = null;
         writeObject(file, this);
+        content = wholeContent;
     }
 
+    /** Returns the content of this blob. The content of a chunked blob read
+     *  back from the object store is assembled on every call and not kept,
+     *  since the shared cache only charges the blob for its chunk list. */
     public byte[] getContent() {
+        if (content == null && chunkIds != null) {
+            return Chunker.assemble(chunkIds);
+        }
         return content;
     }
 
+    /** Writes the content of this blob to TARGET, a chunk at a time for a
+     *  chunked blob read back from the object store. */
+    public void writeTo(File target) {
+        if (content != null) {
+            writeContents(target, content);
+            return;
+        }
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target.toPath()))) {
+            for (String chunkId : chunkIds) {
+                out.write(Chunker.read(chunkId));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    public boolean isChunked() {
+        return chunkIds != null;
+    }
+
+    public List<String> getChunkIds() {
+        return chunkIds;
+    }
+
     public static Blob fromFile(String blobId) {
-        File blobFile = join(OBJECTS_DIR, blobId);
-        return readObject(blobFile, Blob.class);
+        long start = Trace.start();
+        File blobFile = Alternates.locate(join(OBJECTS_DIR, blobId));
+        Blob blob;
+        if (blobFile.exists()) {
+            blob = ObjectCache.SHARED.get("blob:" + blobId, blobFile,
+                    file -> readObject(file, Blob.class));
+        } else {
+            byte[] archived = ColdStore.read(blobId);
+            if (archived == null) {
+                throw new IllegalArgumentException("missing blob " + blobId);
+            }
+            blob = deserialize(archived, Blob.class);
+        }
+        Trace.end("Blob.fromFile", start);
+        return blob;
     }
 
     public String getContentAsString() {
-        return new String(content, StandardCharsets.UTF_8);
+        return new String(getContent(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void dump() {
+        System.out.println("blob " + id);
+        if (chunkIds != null) {
+            System.out.println("chunks: " + chunkIds);
+        } else {
+            System.out.println("size: " + content.length);
+        }
     }
 }
@@ -0,0 +1,121 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** Prints objects named by ids read one per line, for tools that read many
+ *  objects in one process.
+ *
+ *  Every object found is printed as a header line of its id, type and size
+ *  in bytes, followed by that many bytes of content and a newline: the raw
+ *  content of a blob, or the text of a commit or tag. An id that names no
+ *  object prints "ID missing". Output is flushed whenever no more input
+ *  is waiting, so a tool can write an id and read back its object.
+ *
+ *  @author mak.skid
+ */
+class CatFile {
+
+    static final String COMMIT = "commit";
+    static final String TAG = "tag";
+    static final String BLOB = "blob";
+
+    private final OutputStream out;
+    /** True if only the header line of every object is printed. */
+    private final boolean headersOnly;
+
+    CatFile(OutputStream out, boolean headersOnly) {
+        this.out = out;
+        this.headersOnly = headersOnly;
+    }
+
+    /** Prints the object named by every line of IN. */
+    void batch(BufferedReader in) throws IOException {
+        String id;
+        while ((id = in.readLine()) != null) {
+            id = id.trim();
+            if (!id.isEmpty()) {
+                print(id);
+            }
+            if (!in.ready()) {
+                out.flush();
+            }
+        }
+        out.flush();
+    }
+
+    private void print(String id) throws IOException {
+        String type = typeOf(id);
+        if (type == null) {
+            write(id + " missing\n");
+            return;
+        }
+        byte[] content = null;
+        List<String> chunkIds = null;
+        long size;
+        if (type.equals(BLOB)) {
+            Blob blob = Blob.fromFile(id);
+            if (blob.isChunked()) {
+                chunkIds = blob.getChunkIds();
+                size = 0;
+                for (String chunkId : chunkIds) {
+                    size += Chunker.size(chunkId);
+                }
+            } else {
+                content = blob.getContent();
+                size = content.length;
+            }
+        } else {
+            String text = type.equals(COMMIT) ? Commit.find(id).getText()
+                    : Tag.find(COMMON_DIR, id).getText();
+            content = text.getBytes(StandardCharsets.UTF_8);
+            size = content.length;
+        }
+        write(id + " " + type + " " + size + "\n");
+        if (headersOnly) {
+            return;
+        }
+        if (content != null) {
+            out.write(content);
+        } else {
+            for (String chunkId : chunkIds) {
+                out.write(Chunker.read(chunkId));
+            }
+        }
+        out.write('\n');
+    }
+
+    private void write(String line) throws IOException {
+        out.write(line.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Returns the type of object ID, loose or packed, or null if there is
+     *  no such object. */
+    static String typeOf(String id) {
+        if (id.length() != uidLength() || id.contains("/") || id.contains(".")) {
+            return null;
+        }
+        if (Alternates.locate(join(COMMITS_DIR, id.substring(0, 2), id.substring(2))).isFile()) {
+            return COMMIT;
+        }
+        if (Tag.exists(COMMON_DIR, id)) {
+            return TAG;
+        }
+        if (Alternates.locate(join(OBJECTS_DIR, id)).isFile()) {
+            return BLOB;
+        }
+        byte type = ColdStore.type(id);
+        if (type == PackFile.COMMIT) {
+            return COMMIT;
+        } else if (type == PackFile.BLOB) {
+            return BLOB;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,193 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static gitlet.Repository.BLOOM_DIR;
+import static gitlet.Utils.*;
+
+/** The parents of a commit and a Bloom filter of the paths it changed,
+ *  kept next to the commit in .gitlet/bloom so that a walk over the
+ *  history of one file only deserializes the commits that may have
+ *  changed it.
+ *
+ *  A path changed if its blob differs from the one in the parent that log
+ *  follows, or if the commit has no parent and tracks it. A commit that
+ *  changed more than MAX_PATHS paths gets no filter and always may have
+ *  changed a path. Filters are written by Commit.create, and computed and
+ *  written on first use for commits that came from elsewhere.
+ *
+ *  "GBLM" version:int parentCount:byte parentIds:UTF* wordCount:int words:long*
+ *
+ *  @author mak.skid
+ */
+class ChangedPathFilter {
+
+    static final int BITS_PER_PATH = 10;
+    static final int NUM_HASHES = 7;
+    static final int MAX_PATHS = 512;
+
+    private static final int MAGIC = 0x47424c4d;
+    private static final int VERSION = 1;
+
+    private final List<String> parents;
+    /** the filter, or null if every path may have changed. */
+    private final long[] words;
+
+    private ChangedPathFilter(List<String> parents, long[] words) {
+        this.parents = parents;
+        this.words = words;
+    }
+
+    /** Returns the filter of commit COMMITID, computing and writing it if
+     *  there is none yet. */
+    static ChangedPathFilter of(String commitId) {
+        long start = Trace.start();
+        File file = fileOf(commitId);
+        ChangedPathFilter filter = file.isFile() ? read(file) : null;
+        if (filter == null) {
+            filter = compute(Commit.find(commitId));
+            filter.write(commitId);
+        }
+        Trace.end("ChangedPathFilter.of", start);
+        return filter;
+    }
+
+    private static File fileOf(String commitId) {
+        return join(BLOOM_DIR, commitId.substring(0, 2), commitId.substring(2));
+    }
+
+    /** Returns the filter of COMMIT, whose parents must exist. */
+    static ChangedPathFilter compute(Commit commit) {
+        List<String> parents = new ArrayList<>(commit.getParents());
+        Map<String, String> parentTracked = parents.isEmpty()
+                ? Map.of() : Commit.find(parents.get(0)).getTrackedBlobs();
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, String> tracked : commit.getTrackedBlobs().entrySet()) {
+            if (!tracked.getValue().equals(parentTracked.get(tracked.getKey()))) {
+                changed.add(tracked.getKey());
+            }
+        }
+        for (String path : parentTracked.keySet()) {
+            if (!commit.getTrackedBlobs().containsKey(path)) {
+                changed.add(path);
+            }
+        }
+        if (changed.size() > MAX_PATHS) {
+            return new ChangedPathFilter(parents, null);
+        }
+        long[] words = new long[Math.max(1, (changed.size() * BITS_PER_PATH + 63) / 64)];
+        for (String path : changed) {
+            long hash = hash64(path);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32) | 1;
+            for (int i = 0; i < NUM_HASHES; i += 1) {
+                int bit = Math.floorMod(h1 + i * h2, words.length * 64);
+                words[bit >>> 6] |= 1L << bit;
+            }
+        }
+        return new ChangedPathFilter(parents, words);
+    }
+
+    /** FNV-1a over the UTF-8 bytes of PATH, which must stay the same
+     *  across runs, unlike String.hashCode's contract. */
+    private static long hash64(String path) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash ^ (hash >>> 29);
+    }
+
+    List<String> getParents() {
+        return parents;
+    }
+
+    /** Returns false if the commit certainly did not change PATH. */
+    boolean mightHaveChanged(String path) {
+        if (words == null) {
+            return true;
+        }
+        long hash = hash64(path);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < NUM_HASHES; i += 1) {
+            int bit = Math.floorMod(h1 + i * h2, words.length * 64);
+            if ((words[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void write(String commitId) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeByte(parents.size());
+            for (String parent : parents) {
+                out.writeUTF(parent);
+            }
+            out.writeInt(words == null ? -1 : words.length);
+            if (words != null) {
+                for (long word : words) {
+                    out.writeLong(word);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        File file = fileOf(commitId);
+        file.getParentFile().mkdirs();
+        writeContents(file, bytes.toByteArray());
+    }
+
+    /** Returns the filter in FILE, or null if it cannot be read. */
+    private static ChangedPathFilter read(File file) {
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(readContents(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            int parentCount = in.readUnsignedByte();
+            List<String> parents = new ArrayList<>(parentCount);
+            for (int i = 0; i < parentCount; i += 1) {
+                parents.add(in.readUTF());
+            }
+            int wordCount = in.readInt();
+            long[] words = null;
+            if (wordCount >= 0) {
+                words = new long[wordCount];
+                for (int i = 0; i < wordCount; i += 1) {
+                    words[i] = in.readLong();
+                }
+            }
+            return new ChangedPathFilter(parents, words);
+        } catch (IOException | IllegalArgumentException excp) {
+            return null;
+        }
+    }
+
+    /** Deletes the filter of commit COMMITID, if any. */
+    static void delete(String commitId) {
+        File file = fileOf(commitId);
+        if (file.delete()) {
+            String[] siblings = file.getParentFile().list();
+            if (siblings != null && siblings.length == 0) {
+                file.getParentFile().delete();
+            }
+        }
+    }
+}
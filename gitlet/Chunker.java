@@ -0,0 +1,170 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static gitlet.Repository.CHUNKS_DIR;
+import static gitlet.Utils.*;
+
+/** Content-defined chunking for large blobs.
+ *
+ *  Splits content into variable sized chunks with a FastCDC style
+ *  gear rolling hash, so that cut points depend on the content around them
+ *  rather than on their offset. An edit in the middle of a large file only
+ *  changes the chunks around the edit; every other chunk keeps its id and
+ *  is shared with earlier versions of the file. Files are read through a
+ *  buffer of MAX_SIZE bytes and chunked as they are read, so a file of any
+ *  size is stored without being held in memory.
+ *
+ *  @author mak.skid
+ */
+class Chunker {
+
+    /** Chunks are never cut shorter than this, except at the end of the data. */
+    static final int MIN_SIZE = 16 * 1024;
+    /** The size chunks are normalised towards. */
+    static final int AVG_SIZE = 64 * 1024;
+    /** Chunks are always cut at this size. */
+    static final int MAX_SIZE = 256 * 1024;
+
+    /** Harder to match mask used before AVG_SIZE is reached (more bits set). */
+    private static final long MASK_S = 0x0003d90f13530000L;
+    /** Easier to match mask used after AVG_SIZE is reached (fewer bits set). */
+    private static final long MASK_L = 0x0000d90703530000L;
+
+    /** Random values mixed into the rolling hash for every byte value.
+     *  The seed is fixed so that cut points are stable across runs. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x6769746c6574L);
+        for (int i = 0; i < GEAR.length; i += 1) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /** Returns the length of the chunk of CONTENT starting at OFFSET, which
+     *  has LENGTH bytes remaining. */
+    private static int nextCut(byte[] content, int offset, int length) {
+        if (length <= MIN_SIZE) {
+            return length;
+        }
+        int normal = Math.min(AVG_SIZE, length);
+        int max = Math.min(MAX_SIZE, length);
+        long hash = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i += 1) {
+            hash = (hash << 1) + GEAR[content[offset + i] & 0xff];
+            if ((hash & MASK_S) == 0) {
+                return i;
+            }
+        }
+        for (; i < max; i += 1) {
+            hash = (hash << 1) + GEAR[content[offset + i] & 0xff];
+            if ((hash & MASK_L) == 0) {
+                return i;
+            }
+        }
+        return max;
+    }
+
+    /** Splits CONTENT into chunks, writes every chunk that is not already in
+     *  the object store and returns the chunk ids in order. */
+    static List<String> store(byte[] content) {
+        try {
+            return store(new ByteArrayInputStream(content), null);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Same as store(byte[]) for the contents of FILE, which are also
+     *  given to WHOLE. */
+    static List<String> store(File file, HashAlgorithm.Incremental whole) {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            return store(in, whole);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Same as store(byte[]) for the bytes read from IN, which are also
+     *  given to WHOLE unless it is null. Only MAX_SIZE bytes are held at a
+     *  time: a chunk is cut as soon as that much is read, or the rest once
+     *  IN ends, which gives the cuts the whole content would. */
+    private static List<String> store(InputStream in, HashAlgorithm.Incremental whole)
+            throws IOException {
+        CHUNKS_DIR.mkdirs();
+        List<String> chunkIds = new ArrayList<>();
+        byte[] buffer = new byte[MAX_SIZE];
+        int length = 0;
+        boolean ended = false;
+        while (true) {
+            while (!ended && length < buffer.length) {
+                int n = in.read(buffer, length, buffer.length - length);
+                if (n < 0) {
+                    ended = true;
+                } else {
+                    length += n;
+                }
+            }
+            if (length == 0) {
+                return chunkIds;
+            }
+            int cut = nextCut(buffer, 0, length);
+            byte[] chunk = Arrays.copyOf(buffer, cut);
+            String chunkId = hash(chunk);
+            File chunkFile = join(CHUNKS_DIR, chunkId);
+            if (!chunkFile.exists()) {
+                writeContents(chunkFile, chunk);
+            }
+            chunkIds.add(chunkId);
+            if (whole != null) {
+                whole.update(buffer, 0, cut);
+            }
+            System.arraycopy(buffer, cut, buffer, 0, length - cut);
+            length -= cut;
+        }
+    }
+
+    /** Reads the chunks named by CHUNKIDS and returns their concatenation. */
+    static byte[] assemble(List<String> chunkIds) {
+        byte[][] chunks = new byte[chunkIds.size()][];
+        int size = 0;
+        for (int i = 0; i < chunks.length; i += 1) {
+            chunks[i] = read(chunkIds.get(i));
+            size += chunks[i].length;
+        }
+        byte[] content = new byte[size];
+        int pos = 0;
+        for (byte[] chunk : chunks) {
+            System.arraycopy(chunk, 0, content, pos, chunk.length);
+            pos += chunk.length;
+        }
+        return content;
+    }
+
+    /** Returns the content of the chunk CHUNKID, loose or packed. */
+    static byte[] read(String chunkId) {
+        File chunkFile = Alternates.locate(join(CHUNKS_DIR, chunkId));
+        byte[] chunk = chunkFile.isFile() ? readContents(chunkFile) : ColdStore.read(chunkId);
+        if (chunk == null) {
+            throw new IllegalArgumentException("missing chunk " + chunkId);
+        }
+        return chunk;
+    }
+
+    /** Returns the length of the chunk CHUNKID, without reading it unless
+     *  it is packed. */
+    static long size(String chunkId) {
+        File chunkFile = Alternates.locate(join(CHUNKS_DIR, chunkId));
+        return chunkFile.isFile() ? chunkFile.length() : read(chunkId).length;
+    }
+}
@@ -0,0 +1,114 @@
+package gitlet;
+
+import java.io.File;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** Pack files of archived history in .gitlet/objects/cold.
+ *
+ *  Objects are looked up here only when their loose file is missing, so
+ *  commands that stay in front of the shallow boundary never open a pack.
+ *
+ *  @author mak.skid
+ */
+class ColdStore {
+
+    private static List<PackFile> packs;
+
+    /** Returns the packs of the repository and of its alternates, opened
+     *  once per process. */
+    static synchronized List<PackFile> packs() {
+        if (packs == null) {
+            packs = new ArrayList<>();
+            for (File coldDir : Alternates.withAlternates(COLD_DIR)) {
+                List<String> names = plainFilenamesIn(coldDir);
+                if (names != null) {
+                    for (String name : names) {
+                        if (name.endsWith(".pack")) {
+                            packs.add(PackFile.open(join(coldDir, name)));
+                        }
+                    }
+                }
+            }
+        }
+        return packs;
+    }
+
+    /** Returns the contents of archived object ID, or null if no pack
+     *  holds it. */
+    static byte[] read(String id) {
+        for (PackFile pack : packs()) {
+            byte[] contents = pack.read(id);
+            if (contents != null) {
+                return contents;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the type of archived object ID, or 0 if no pack holds it. */
+    static byte type(String id) {
+        for (PackFile pack : packs()) {
+            byte type = pack.type(id);
+            if (type != 0) {
+                return type;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns the ids of every archived commit. */
+    static List<String> commitIds() {
+        List<String> ids = new ArrayList<>();
+        for (PackFile pack : packs()) {
+            ids.addAll(pack.ids(PackFile.COMMIT));
+        }
+        return ids;
+    }
+
+    /** Moves the loose COMMITS, BLOBS and CHUNKS into one new pack. The
+     *  pack is complete before any loose file is deleted. */
+    static void archive(List<String> commits, List<String> blobs, List<String> chunks) {
+        SortedMap<String, Map.Entry<Byte, File>> objects = new TreeMap<>();
+        for (String id : commits) {
+            objects.put(id, entry(PackFile.COMMIT,
+                    join(COMMITS_DIR, id.substring(0, 2), id.substring(2))));
+        }
+        for (String id : blobs) {
+            objects.put(id, entry(PackFile.BLOB, join(OBJECTS_DIR, id)));
+        }
+        for (String id : chunks) {
+            objects.put(id, entry(PackFile.CHUNK, join(CHUNKS_DIR, id)));
+        }
+        if (objects.isEmpty()) {
+            return;
+        }
+        COLD_DIR.mkdirs();
+        String packName = "pack-" + hash(String.join("", objects.keySet()));
+        File temp = join(COLD_DIR, packName + ".tmp");
+        PackFile.write(temp, objects);
+        if (!temp.renameTo(join(COLD_DIR, packName + ".pack"))) {
+            throw error("Could not write pack %s.", packName);
+        }
+        packs = null;
+        for (Map.Entry<Byte, File> object : objects.values()) {
+            File file = object.getValue();
+            file.delete();
+            String[] siblings = file.getParentFile().list();
+            if (object.getKey() == PackFile.COMMIT && siblings != null && siblings.length == 0) {
+                file.getParentFile().delete();
+            }
+        }
+    }
+
+    private static Map.Entry<Byte, File> entry(byte type, File file) {
+        return new AbstractMap.SimpleImmutableEntry<>(type, file);
+    }
+}
@@ -1,7 +1,6 @@
 package gitlet;
 
 import java.io.File;
-import java.io.Serializable;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
@@ -15,7 +14,9 @@ import static gitlet.Utils.readObject;
  *
  *  @author mak.skid
  */
-public class Commit implements Serializable {
+public class Commit implements Dumpable {
+    private static final long serialVersionUID = 3120091287795742738L;
+
     /**
      * List all instance variables of the Commit class here with a useful
      * comment above them describing what that variable represents and how that
@@ -36,11 +37,20 @@ public class Commit implements Serializable {
     public Commit(String m, Commit currCommit) {
         message = m;
         date = new Date();
-        trackedBlobs = currCommit.getTrackedBlobs();
+        trackedBlobs = new ConcurrentHashMap<>(currCommit.getTrackedBlobs());
         parentRefs = new ArrayList<>();
         id = generateId();
     }
 
+    /** Returns a commit of TRACKED with PARENTS, made outside the staging area. */
+    public Commit(String m, Map<String, String> tracked, List<String> parents) {
+        message = m;
+        date = new Date();
+        trackedBlobs = new ConcurrentHashMap<>(tracked);
+        parentRefs = new ArrayList<>(parents);
+        id = generateId();
+    }
+
     public Commit() {
         message = "initial commit";
         date = new Date(0);
@@ -50,13 +60,23 @@ public class Commit implements Serializable {
     }
 
     public static Commit find(String hash) {
+        long start = Trace.start();
         File subDir = join(COMMITS_DIR, hash.substring(0, 2));
-        File commitFileToRead = join(subDir, hash.substring(2));
-        if (!commitFileToRead.exists()) {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
+        File commitFileToRead = Alternates.locate(join(subDir, hash.substring(2)));
+        Commit commit;
+        if (commitFileToRead.exists()) {
+            commit = ObjectCache.SHARED.get("commit:" + hash, commitFileToRead,
+                    file -> readObject(file, Commit.class));
+        } else {
+            byte[] archived = ColdStore.read(hash);
+            if (archived == null) {
+                System.out.println("No commit with that id exists.");
+                System.exit(0);
+            }
+            commit = deserialize(archived, Commit.class);
         }
-        return readObject(commitFileToRead, Commit.class);
+        Trace.end("Commit.find", start);
+        return commit;
     }
 
     public String getBlobId(String filePath) {
@@ -81,15 +101,6 @@ public class Commit implements Serializable {
         }
     }
 
-    public void removeTracked() {
-        for (String filePath: trackedBlobs.keySet()) {
-            File fileInCWD = new File(filePath);
-            if (!fileInCWD.exists()) {
-                trackedBlobs.remove(filePath);
-            }
-        }
-    }
-
     public boolean isTracked(String filePath) {
         return trackedBlobs.get(filePath) != null;
     }
@@ -112,13 +123,18 @@ public class Commit implements Serializable {
     }
 
     public void create() {
+        write();
+        updateBranchHead(id);
+    }
+
+    /** Stores this commit without moving any branch to it. */
+    public void write() {
         String newCommitSubDirName = id.substring(0, 2);
         File newCommitSubDir = join(COMMITS_DIR, newCommitSubDirName);
         newCommitSubDir.mkdir();
         File newCommitFile = join(newCommitSubDir, id.substring(2));
         writeObject(newCommitFile, this);
-        File refFile = getCurrBranchHeadRefFile();
-        writeContents(refFile, id);
+        ChangedPathFilter.compute(this).write(id);
     }
 
     public List<String> getParents() {
@@ -128,13 +144,14 @@ public class Commit implements Serializable {
     public ConcurrentHashMap<String, String> getTrackedBlobs() { return trackedBlobs; }
 
     public boolean hasIdentical(File file) {
-        String hash = sha1(file.getPath(), readContents(file));
-        String blobRef = trackedBlobs.get(file.getPath());
+        String key = WorkingTree.key(file);
+        String hash = hash(key, file);
+        String blobRef = trackedBlobs.get(key);
         return hash.equals(blobRef);
     }
 
     private String generateId() {
-        return sha1(message, getTimestamp(), trackedBlobs.toString(), parentRefs.toString());
+        return hash(message, getTimestamp(), trackedBlobs.toString(), parentRefs.toString());
     }
 
     public String getTimestamp() {
@@ -144,6 +161,28 @@ public class Commit implements Serializable {
         return dateFormat.format(date);
     }
 
+    /** Returns this commit as text: a line per parent, the date in
+     *  milliseconds, a line per tracked blob with the name of its file, then
+     *  a blank line and the message. */
+    public String getText() {
+        StringBuilder sb = new StringBuilder();
+        for (String parent: parentRefs) {
+            sb.append("parent " + parent + "\n");
+        }
+        sb.append("date " + date.getTime() + "\n");
+        for (Map.Entry<String, String> tracked: new TreeMap<>(trackedBlobs).entrySet()) {
+            sb.append("blob " + tracked.getValue() + " " + WorkingTree.name(tracked.getKey()) + "\n");
+        }
+        sb.append("\n" + message + "\n");
+        return sb.toString();
+    }
+
+    @Override
+    public void dump() {
+        System.out.println("commit " + id);
+        System.out.print(getText());
+    }
+
     public String getLog() {
         StringBuilder sb = new StringBuilder("===\ncommit ");
         sb.append(getId() + "\n");
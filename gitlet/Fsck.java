@@ -0,0 +1,287 @@
+package gitlet;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** Verifies every object of the repository and of its alternates, and
+ *  everything that refers to one.
+ *
+ *  Objects are read in parallel, loose and packed alike. A chunk must hash
+ *  to its id. A blob's id covers the path it was added under, which the
+ *  blob does not store, so a blob is rehashed under a path that a commit
+ *  or the index tracks it at; a blob nothing refers to can only be checked
+ *  for being readable. A commit's id is computed before its parents are
+ *  set and cannot be recomputed, so a commit must be readable and record
+ *  the id it is stored under. Then every parent, blob and chunk referred
+ *  to must exist, as must the commits of HEAD, the branches, the
+ *  remote-tracking branches and the blobs of the index.
+ *
+ *  @author mak.skid
+ */
+class Fsck {
+
+    private final Queue<String> problems = new ConcurrentLinkedQueue<>();
+    private final LongAdder objectCount = new LongAdder();
+    private final LongAdder byteCount = new LongAdder();
+
+    private final Map<String, Commit> commits = new ConcurrentHashMap<>();
+    /** a path each blob is tracked at, used to rehash it. */
+    private final Map<String, String> blobPaths = new ConcurrentHashMap<>();
+    private final Map<String, Blob> blobs = new ConcurrentHashMap<>();
+    private final Set<String> chunks = ConcurrentHashMap.newKeySet();
+    private final Set<String> indexBlobs = new HashSet<>();
+
+    /** Checks the repository, reports on System.out and returns the exit
+     *  status: 0 if no problem was found and 1 otherwise. */
+    int run() {
+        long start = System.nanoTime();
+        checkCommits();
+        checkRefs();
+        checkBlobs();
+        checkChunks();
+        checkConnectivity();
+
+        long elapsedNanos = Math.max(System.nanoTime() - start, 1);
+        List<String> sortedProblems = new ArrayList<>(problems);
+        Collections.sort(sortedProblems);
+        for (String problem : sortedProblems) {
+            System.out.println(problem);
+        }
+        message("Checked %d objects, %d bytes in %d ms (%.1f MB/s).",
+                objectCount.sum(), byteCount.sum(), elapsedNanos / 1_000_000,
+                byteCount.sum() * 1e3 / elapsedNanos);
+        if (sortedProblems.isEmpty()) {
+            return 0;
+        }
+        message("Found %d problems.", sortedProblems.size());
+        return 1;
+    }
+
+    private void problem(String msg, Object... args) {
+        problems.add(String.format(msg, args));
+    }
+
+    private static String reason(IllegalArgumentException excp) {
+        return excp.getMessage() == null ? "cannot be deserialized" : excp.getMessage();
+    }
+
+    /** Returns the contents of FILE, or null after reporting WHAT as
+     *  unreadable. */
+    private byte[] read(File file, String what) {
+        try {
+            byte[] contents = readContents(file);
+            objectCount.increment();
+            byteCount.add(contents.length);
+            return contents;
+        } catch (IllegalArgumentException excp) {
+            problem("unreadable %s: %s", what, excp.getMessage());
+            return null;
+        }
+    }
+
+    private static List<File> filesIn(File dir) {
+        List<File> files = new ArrayList<>();
+        List<String> names = plainFilenamesIn(dir);
+        if (names != null) {
+            for (String name : names) {
+                files.add(join(dir, name));
+            }
+        }
+        return files;
+    }
+
+    private void checkCommits() {
+        List<File> commitFiles = new ArrayList<>();
+        for (File commitsDir : Alternates.withAlternates(COMMITS_DIR)) {
+            File[] subDirs = commitsDir.listFiles(File::isDirectory);
+            for (File subDir : subDirs == null ? new File[0] : subDirs) {
+                commitFiles.addAll(filesIn(subDir));
+            }
+        }
+        commitFiles.parallelStream().forEach(file -> {
+            String id = file.getParentFile().getName() + file.getName();
+            checkCommit(id, read(file, "commit " + id));
+        });
+        for (PackFile pack : ColdStore.packs()) {
+            pack.ids(PackFile.COMMIT).parallelStream()
+                    .forEach(id -> checkCommit(id, readPacked(pack, id)));
+        }
+        for (Commit commit : commits.values()) {
+            for (Map.Entry<String, String> tracked : commit.getTrackedBlobs().entrySet()) {
+                blobPaths.putIfAbsent(tracked.getValue(), tracked.getKey());
+            }
+        }
+    }
+
+    private byte[] readPacked(PackFile pack, String id) {
+        try {
+            byte[] contents = pack.read(id);
+            objectCount.increment();
+            byteCount.add(contents.length);
+            return contents;
+        } catch (IllegalArgumentException excp) {
+            problem("unreadable object %s in %s: %s", id, pack.getFile().getName(), excp.getMessage());
+            return null;
+        }
+    }
+
+    private void checkCommit(String id, byte[] contents) {
+        if (contents == null) {
+            return;
+        }
+        try {
+            Commit commit = deserialize(contents, Commit.class);
+            if (!id.equals(commit.getId())) {
+                problem("commit %s: stored as %s", commit.getId(), id);
+                return;
+            }
+            commits.put(id, commit);
+        } catch (IllegalArgumentException excp) {
+            problem("corrupt commit %s: %s", id, reason(excp));
+        }
+    }
+
+    private void checkRefs() {
+        Refs refs = Refs.snapshot();
+        for (String name : refs.all().keySet()) {
+            String commitId;
+            try {
+                commitId = refs.peel(name);
+            } catch (IllegalArgumentException excp) {
+                problem("ref %s: corrupt tag %s: %s", name, refs.get(name), reason(excp));
+                continue;
+            }
+            if (!commits.containsKey(commitId)) {
+                problem("ref %s: missing commit %s", name, commitId);
+            }
+        }
+        String head = HEAD.isFile() ? readContentsAsString(HEAD) : "";
+        if (!head.startsWith(HEAD_BRANCH_REF_PATH)
+                || refs.headCommitId() == null) {
+            problem("HEAD: not a branch: %s", head);
+        }
+        for (String commitId : Stash.entries()) {
+            if (!commits.containsKey(commitId)) {
+                problem("stash: missing commit %s", commitId);
+            }
+        }
+        for (String commitId : Shallow.boundaries()) {
+            if (!commits.containsKey(commitId)) {
+                problem("shallow: missing commit %s", commitId);
+            }
+        }
+        try {
+            Index index = Index.fromFile();
+            if (index != null) {
+                Map<String, String> indexed = new HashMap<>(index.getTracked());
+                indexed.putAll(index.getStaged());
+                for (Map.Entry<String, String> entry : indexed.entrySet()) {
+                    blobPaths.putIfAbsent(entry.getValue(), entry.getKey());
+                    indexBlobs.add(entry.getValue());
+                }
+            }
+        } catch (IllegalArgumentException excp) {
+            problem("unreadable index: %s", excp.getMessage());
+        }
+    }
+
+    private void checkBlobs() {
+        Alternates.withAlternates(OBJECTS_DIR).stream()
+                .flatMap(dir -> filesIn(dir).stream())
+                .parallel()
+                .forEach(file -> checkBlob(file.getName(), read(file, "blob " + file.getName())));
+        for (PackFile pack : ColdStore.packs()) {
+            pack.ids(PackFile.BLOB).parallelStream()
+                    .forEach(id -> checkBlob(id, readPacked(pack, id)));
+        }
+    }
+
+    private void checkBlob(String id, byte[] contents) {
+        if (contents == null) {
+            return;
+        }
+        try {
+            Blob blob = deserialize(contents, Blob.class);
+            if (!id.equals(blob.getId())) {
+                problem("blob %s: stored as %s", blob.getId(), id);
+                return;
+            }
+            blobs.put(id, blob);
+            String path = blobPaths.get(id);
+            if (path != null && !blob.isChunked() && !id.equals(hash(path, blob.getContent()))) {
+                problem("corrupt blob %s: content does not match id", id);
+            }
+        } catch (IllegalArgumentException excp) {
+            problem("corrupt blob %s: %s", id, reason(excp));
+        }
+    }
+
+    private void checkChunks() {
+        Alternates.withAlternates(CHUNKS_DIR).stream()
+                .flatMap(dir -> filesIn(dir).stream())
+                .parallel()
+                .forEach(file -> checkChunk(file.getName(), read(file, "chunk " + file.getName())));
+        for (PackFile pack : ColdStore.packs()) {
+            pack.ids(PackFile.CHUNK).parallelStream()
+                    .forEach(id -> checkChunk(id, readPacked(pack, id)));
+        }
+    }
+
+    private void checkChunk(String id, byte[] contents) {
+        if (contents == null) {
+            return;
+        }
+        if (id.equals(hash(contents))) {
+            chunks.add(id);
+        } else {
+            problem("corrupt chunk %s: content does not match id", id);
+        }
+    }
+
+    /** Checks that everything referred to was found intact, and rehashes
+     *  the chunked blobs once their chunks are known to be. */
+    private void checkConnectivity() {
+        commits.values().parallelStream().forEach(commit -> {
+            if (!Shallow.isBoundary(commit.getId())) {
+                for (String parentId : commit.getParents()) {
+                    if (!commits.containsKey(parentId)) {
+                        problem("commit %s: missing parent %s", commit.getId(), parentId);
+                    }
+                }
+            }
+            for (String blobId : commit.getTrackedBlobs().values()) {
+                if (!blobs.containsKey(blobId)) {
+                    problem("commit %s: missing blob %s", commit.getId(), blobId);
+                }
+            }
+        });
+        blobs.entrySet().parallelStream()
+                .filter(entry -> entry.getValue().isChunked())
+                .forEach(entry -> {
+                    String blobId = entry.getKey();
+                    boolean complete = true;
+                    for (String chunkId : entry.getValue().getChunkIds()) {
+                        if (!chunks.contains(chunkId)) {
+                            problem("blob %s: missing chunk %s", blobId, chunkId);
+                            complete = false;
+                        }
+                    }
+                    String path = blobPaths.get(blobId);
+                    if (complete && path != null
+                            && !blobId.equals(hash(path, entry.getValue().getContent()))) {
+                        problem("corrupt blob %s: content does not match id", blobId);
+                    }
+                });
+        for (String blobId : indexBlobs) {
+            if (!blobs.containsKey(blobId)) {
+                problem("index: missing blob %s", blobId);
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package gitlet;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** Deletes commits, blobs, chunks and tags that cannot be reached from any ref
+ *  or from the staging area of any worktree.
+ *
+ *  Reachable objects are marked with a breadth-first walk over the commit
+ *  graph, where every level of the walk is loaded in parallel. Everything
+ *  left unmarked in the object directories is swept, unless it was written
+ *  within the grace period, so that objects of a concurrently running
+ *  command are not deleted under its feet.
+ *
+ *  @author mak.skid
+ */
+class GarbageCollector {
+
+    /** Grace period used by gc: two weeks, in milliseconds. */
+    static final long DEFAULT_GRACE_MILLIS = 14L * 24 * 60 * 60 * 1000;
+
+    private final Set<String> reachableCommits = ConcurrentHashMap.newKeySet();
+    private final Set<String> reachableBlobs = ConcurrentHashMap.newKeySet();
+    private final Set<String> reachableChunks = ConcurrentHashMap.newKeySet();
+    private final Set<String> reachableTags = new HashSet<>();
+    private final long graceMillis;
+
+    private int removedObjects;
+    private long reclaimedBytes;
+
+    GarbageCollector(long graceMillis) {
+        this.graceMillis = graceMillis;
+    }
+
+    /** Marks and sweeps the repository, then reports what was reclaimed. */
+    void run() {
+        long start = System.nanoTime();
+        mark();
+        sweep();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        message("Removed %d objects, reclaimed %d bytes in %d ms.",
+                removedObjects, reclaimedBytes, elapsedMillis);
+    }
+
+    /** Returns the commit ids every walk starts from: the commit every
+     *  ref points to, through annotated tags, which are marked, and every
+     *  stash. */
+    private Set<String> rootCommits() {
+        Set<String> roots = new HashSet<>();
+        Refs refs = Refs.snapshot();
+        for (String name : refs.all().keySet()) {
+            String commitId = refs.peel(name);
+            if (!commitId.equals(refs.get(name))) {
+                reachableTags.add(refs.get(name));
+            }
+            roots.add(commitId);
+        }
+        roots.addAll(Stash.entries());
+        return roots;
+    }
+
+    /** Marks every object reachable from the roots, stopping at shallow
+     *  boundaries. */
+    void mark() {
+        for (File gitletDir : worktreeGitletDirs()) {
+            Index stagingArea = Index.of(gitletDir);
+            if (stagingArea != null) {
+                reachableBlobs.addAll(stagingArea.getStaged().values());
+                reachableBlobs.addAll(stagingArea.getTracked().values());
+            }
+        }
+        Set<String> frontier = rootCommits();
+        while (!frontier.isEmpty()) {
+            frontier = frontier.parallelStream()
+                    .filter(reachableCommits::add)
+                    .flatMap(commitId -> {
+                        Commit commit = Commit.find(commitId);
+                        reachableBlobs.addAll(commit.getTrackedBlobs().values());
+                        return Shallow.parentsOf(commit).stream();
+                    })
+                    .filter(parentId -> !reachableCommits.contains(parentId))
+                    .collect(Collectors.toSet());
+        }
+        if (CHUNKS_DIR.isDirectory()) {
+            reachableBlobs.parallelStream().forEach(this::markChunks);
+        }
+    }
+
+    boolean isReachableCommit(String commitId) {
+        return reachableCommits.contains(commitId);
+    }
+
+    boolean isReachableBlob(String blobId) {
+        return reachableBlobs.contains(blobId);
+    }
+
+    boolean isReachableChunk(String chunkId) {
+        return reachableChunks.contains(chunkId);
+    }
+
+    /** Marks the chunks of blob BLOBID. Chunked blob files only hold the
+     *  chunk list, so larger blob files are never read here. */
+    private void markChunks(String blobId) {
+        File blobFile = join(OBJECTS_DIR, blobId);
+        if (!blobFile.isFile() || blobFile.length() >= Blob.CHUNKING_THRESHOLD) {
+            return;
+        }
+        Blob blob = Blob.fromFile(blobId);
+        if (blob.isChunked()) {
+            reachableChunks.addAll(blob.getChunkIds());
+        }
+    }
+
+    private void sweep() {
+        long cutoff = System.currentTimeMillis() - graceMillis;
+        File[] commitSubDirs = COMMITS_DIR.listFiles(File::isDirectory);
+        for (File subDir : commitSubDirs) {
+            for (String name : plainFilenamesIn(subDir)) {
+                String commitId = subDir.getName() + name;
+                if (!reachableCommits.contains(commitId) && sweepFile(join(subDir, name), cutoff)) {
+                    ChangedPathFilter.delete(commitId);
+                }
+            }
+            String[] remaining = subDir.list();
+            if (remaining != null && remaining.length == 0) {
+                subDir.delete();
+            }
+        }
+        for (String blobId : plainFilenamesIn(OBJECTS_DIR)) {
+            if (!reachableBlobs.contains(blobId)) {
+                sweepFile(join(OBJECTS_DIR, blobId), cutoff);
+            }
+        }
+        if (CHUNKS_DIR.isDirectory()) {
+            for (String chunkId : plainFilenamesIn(CHUNKS_DIR)) {
+                if (!reachableChunks.contains(chunkId)) {
+                    sweepFile(join(CHUNKS_DIR, chunkId), cutoff);
+                }
+            }
+        }
+        if (TAG_OBJECTS_DIR.isDirectory()) {
+            for (String tagId : plainFilenamesIn(TAG_OBJECTS_DIR)) {
+                if (!reachableTags.contains(tagId)) {
+                    sweepFile(join(TAG_OBJECTS_DIR, tagId), cutoff);
+                }
+            }
+        }
+    }
+
+    /** Deletes unreachable FILE unless it was modified after CUTOFF, and
+     *  returns whether it was deleted. */
+    private boolean sweepFile(File file, long cutoff) {
+        if (file.lastModified() > cutoff) {
+            return false;
+        }
+        long size = file.length();
+        if (file.delete()) {
+            removedObjects += 1;
+            reclaimedBytes += size;
+            return true;
+        }
+        return false;
+    }
+}
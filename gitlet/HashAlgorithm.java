@@ -0,0 +1,341 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static gitlet.Repository.OBJECT_FORMAT;
+import static gitlet.Utils.*;
+
+/** The hash functions Gitlet can name objects with, and the one place
+ *  ids are computed.
+ *
+ *  A repository records the algorithm of its object ids in .gitlet at init
+ *  time; repositories without that record predate it and use SHA-1.
+ *  XXH64 is a fast non-cryptographic hash for detecting changes, used for
+ *  the fingerprints of working files kept while a watcher runs, and can
+ *  never be the object format.
+ *
+ *  Every algorithm keeps per-thread digest state, so hashing allocates
+ *  nothing but the resulting String.
+ *
+ *  @author mak.skid
+ */
+enum HashAlgorithm {
+    SHA1("sha1", "SHA-1", true),
+    SHA256("sha256", "SHA-256", true),
+    XXH64("xxh64", null, false);
+
+    /** Size of the per-thread buffer used to encode Strings and to read
+     *  files while hashing. */
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+    /** Lower-case hexadecimal digits, indexed by value. */
+    private static final byte[] HEX_DIGITS =
+        "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    /** The object format of the current repository, once read. */
+    private static volatile HashAlgorithm current;
+
+    private final String name;
+    private final String jcaName;
+    private final boolean cryptographic;
+    private final ThreadLocal<Hasher> hasher;
+
+    HashAlgorithm(String name, String jcaName, boolean cryptographic) {
+        this.name = name;
+        this.jcaName = jcaName;
+        this.cryptographic = cryptographic;
+        this.hasher = ThreadLocal.withInitial(() -> new Hasher(newDigest()));
+    }
+
+    /** Returns the algorithm called NAME, or null if there is none. */
+    static HashAlgorithm forName(String name) {
+        for (HashAlgorithm algorithm : values()) {
+            if (algorithm.name.equals(name)) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the object format of the repository in the working directory. */
+    static HashAlgorithm current() {
+        HashAlgorithm algorithm = current;
+        if (algorithm == null) {
+            algorithm = OBJECT_FORMAT.isFile()
+                    ? forName(readContentsAsString(OBJECT_FORMAT).trim())
+                    : SHA1;
+            if (algorithm == null) {
+                throw error("Unknown object format in %s.", OBJECT_FORMAT);
+            }
+            current = algorithm;
+        }
+        return algorithm;
+    }
+
+    /** Makes ALGORITHM the object format of a repository being initialized. */
+    static void record(HashAlgorithm algorithm) {
+        if (!algorithm.cryptographic) {
+            throw error("%s cannot be used to name objects.", algorithm.name);
+        }
+        writeContents(OBJECT_FORMAT, algorithm.name);
+        current = algorithm;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    boolean isCryptographic() {
+        return cryptographic;
+    }
+
+    /** Returns the length of an id of this algorithm as a hexadecimal numeral. */
+    int hexLength() {
+        return 2 * hasher.get().digest.length;
+    }
+
+    private MessageDigest newDigest() {
+        if (jcaName == null) {
+            return new XxHash64();
+        }
+        try {
+            return MessageDigest.getInstance(jcaName);
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support " + jcaName);
+        }
+    }
+
+    /** Returns the hash of the concatenation of VALS, which may be any
+     *  mixture of byte arrays and Strings. */
+    String hash(Object... vals) {
+        long start = Trace.start();
+        Hasher h = hasher.get();
+        h.md.reset();
+        long bytes = 0;
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                h.md.update((byte[]) val);
+                bytes += ((byte[]) val).length;
+            } else if (val instanceof String) {
+                h.update((String) val);
+                bytes += ((String) val).length();
+            } else {
+                h.md.reset();
+                throw new IllegalArgumentException("improper type to hash");
+            }
+        }
+        String result = h.finish();
+        Trace.end(name, start, bytes);
+        return result;
+    }
+
+    /** Returns the hash of VAL. */
+    String hash(byte[] val) {
+        long start = Trace.start();
+        Hasher h = hasher.get();
+        h.md.reset();
+        h.md.update(val);
+        String result = h.finish();
+        Trace.end(name, start, val.length);
+        return result;
+    }
+
+    /** Returns the hash of the concatenation of PREFIX and VAL, as
+     *  hash(PREFIX, VAL) without the varargs array. */
+    String hash(String prefix, byte[] val) {
+        long start = Trace.start();
+        Hasher h = hasher.get();
+        h.md.reset();
+        h.update(prefix);
+        h.md.update(val);
+        String result = h.finish();
+        Trace.end(name, start, val.length);
+        return result;
+    }
+
+    /** Returns the hash of the remaining bytes of BUFFER, consuming them. */
+    String hash(ByteBuffer buffer) {
+        long start = Trace.start();
+        int length = buffer.remaining();
+        Hasher h = hasher.get();
+        h.md.reset();
+        h.md.update(buffer);
+        String result = h.finish();
+        Trace.end(name, start, length);
+        return result;
+    }
+
+    /** Returns the hash of the concatenation of PREFIX and the contents of
+     *  FILE, the same as hash(PREFIX, readContents(FILE)). The file is
+     *  streamed through a per-thread buffer rather than read into memory.
+     *  FILE must be a normal file.  Throws IllegalArgumentException in
+     *  case of problems. */
+    String hash(String prefix, File file) {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        long start = Trace.start();
+        Hasher h = hasher.get();
+        h.md.reset();
+        h.update(prefix);
+        long length;
+        try {
+            length = h.update(file);
+        } catch (IOException excp) {
+            h.md.reset();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        String result = h.finish();
+        Trace.end(name, start, length);
+        return result;
+    }
+
+    /** Returns the hash of the concatenation of PREFIX and the contents of
+     *  FILE, and the hash of the contents alone under FINGERPRINT, both
+     *  fed from one streaming read of FILE so that they always describe
+     *  the same bytes. FILE must be a normal file.  Throws
+     *  IllegalArgumentException in case of problems. */
+    String[] hashWithFingerprint(String prefix, File file, HashAlgorithm fingerprint) {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        long start = Trace.start();
+        Hasher h = hasher.get();
+        Hasher f = fingerprint.hasher.get();
+        h.md.reset();
+        f.md.reset();
+        h.update(prefix);
+        long length;
+        try {
+            length = h.update(file, f.md);
+        } catch (IOException excp) {
+            h.md.reset();
+            f.md.reset();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        String[] result = {h.finish(), f.finish()};
+        Trace.end(name, start, length);
+        return result;
+    }
+
+    /** Returns a hasher of PREFIX followed by whatever is given to it, for
+     *  content that is read in pieces. It has its own digest state, so
+     *  other hashing may happen while it is in use. */
+    Incremental start(String prefix) {
+        Incremental incremental = new Incremental(name, new Hasher(newDigest()));
+        incremental.hasher.update(prefix);
+        return incremental;
+    }
+
+    /** Hashing of content that is read in pieces, begun by start(). */
+    static class Incremental {
+        private final String name;
+        private final Hasher hasher;
+        private final long start = Trace.start();
+        private long bytes;
+
+        private Incremental(String name, Hasher hasher) {
+            this.name = name;
+            this.hasher = hasher;
+        }
+
+        /** Feeds LENGTH bytes of VAL starting at OFFSET to the digest. */
+        void update(byte[] val, int offset, int length) {
+            hasher.md.update(val, offset, length);
+            bytes += length;
+        }
+
+        /** Returns the hash of everything given so far. */
+        String finish() {
+            String result = hasher.finish();
+            Trace.end(name, start, bytes);
+            return result;
+        }
+    }
+
+    /** Per-thread hashing state, reused by every call. */
+    private static class Hasher {
+        final MessageDigest md;
+        /** File contents pass through here. */
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+        /** Scratch space for encoding ASCII Strings. */
+        final byte[] scratch = new byte[HASH_BUFFER_SIZE];
+        final byte[] digest;
+        final byte[] hex;
+
+        Hasher(MessageDigest md) {
+            this.md = md;
+            digest = new byte[md.getDigestLength()];
+            hex = new byte[2 * digest.length];
+        }
+
+        /** Feeds the UTF-8 encoding of VAL to the digest, without
+         *  allocating when VAL is plain ASCII. */
+        void update(String val) {
+            int length = val.length();
+            if (length > scratch.length) {
+                md.update(val.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            for (int i = 0; i < length; i += 1) {
+                char c = val.charAt(i);
+                if (c >= 0x80) {
+                    md.update(val.getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+                scratch[i] = (byte) c;
+            }
+            md.update(scratch, 0, length);
+        }
+
+        /** Feeds the contents of FILE to the digest, returning the number
+         *  of bytes read. */
+        long update(File file) throws IOException {
+            return update(file, null);
+        }
+
+        /** Feeds the contents of FILE to the digest and, unless it is null,
+         *  to OTHER, returning the number of bytes read. */
+        long update(File file, MessageDigest other) throws IOException {
+            long total = 0;
+            try (FileChannel channel = FileChannel.open(file.toPath(),
+                                                        StandardOpenOption.READ)) {
+                buffer.clear();
+                int n;
+                while ((n = channel.read(buffer)) >= 0) {
+                    buffer.flip();
+                    md.update(buffer);
+                    if (other != null) {
+                        buffer.rewind();
+                        other.update(buffer);
+                    }
+                    buffer.clear();
+                    total += n;
+                }
+            }
+            return total;
+        }
+
+        /** Finishes the digest and returns it as a hexadecimal String. */
+        String finish() {
+            try {
+                md.digest(digest, 0, digest.length);
+            } catch (DigestException excp) {
+                throw new IllegalStateException(excp);
+            }
+            for (int i = 0; i < digest.length; i += 1) {
+                hex[2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+                hex[2 * i + 1] = HEX_DIGITS[digest[i] & 0xf];
+            }
+            return new String(hex, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** The ignore rules of .gitletignore in the working directory, with the
+ *  syntax of .gitignore: a pattern without a slash matches a name at any
+ *  depth, one with a slash matches a path from the working directory, a
+ *  trailing slash matches directories only, and a leading ! re-includes
+ *  what an earlier pattern ignored. The last matching pattern wins, and
+ *  everything below an ignored directory is ignored.
+ *
+ *  Ignored files that are not tracked are left out before they are read
+ *  or hashed: status does not list them, add -A does not stage them,
+ *  checkout neither complains about nor deletes them, and globs and
+ *  directories given to add skip them.
+ *
+ *  Patterns are compiled into runs of consecutive patterns with the same
+ *  sign. A run answers from hash tables of literal names, suffixes (*.log)
+ *  and prefixes (tmp*) where it can, and from one regular expression
+ *  joining all its other patterns, so a path is tested against a few
+ *  lookups and at most one regex per run however many patterns there are.
+ *
+ *  @author mak.skid
+ */
+class Ignore {
+
+    private static Ignore rules;
+
+    /** Patterns of one sign that follow each other, compiled together. */
+    private static class Run {
+        final boolean negated;
+        final Table any = new Table();
+        /** Patterns with a trailing slash. */
+        final Table directories = new Table();
+
+        Run(boolean negated) {
+            this.negated = negated;
+        }
+
+        boolean matches(String path, String name, boolean isDirectory) {
+            return any.matches(path, name) || isDirectory && directories.matches(path, name);
+        }
+    }
+
+    /** A compiled set of patterns. */
+    private static class Table {
+        final Set<String> names = new HashSet<>();
+        final Set<String> suffixes = new HashSet<>();
+        final Set<String> prefixes = new HashSet<>();
+        /** The lengths of the suffixes and of the prefixes, so that lookups
+         *  only try the lengths a pattern has. */
+        final Set<Integer> suffixLengths = new TreeSet<>();
+        final Set<Integer> prefixLengths = new TreeSet<>();
+        final List<String> regexes = new ArrayList<>();
+        Pattern combined;
+
+        void add(String pattern) {
+            boolean anchored = pattern.indexOf('/') >= 0;
+            if (pattern.startsWith("/")) {
+                pattern = pattern.substring(1);
+            }
+            if (!anchored) {
+                String rest = pattern.substring(1);
+                if (!hasWildcards(pattern)) {
+                    names.add(pattern);
+                    return;
+                } else if (pattern.startsWith("*") && !hasWildcards(rest)) {
+                    suffixes.add(rest);
+                    suffixLengths.add(rest.length());
+                    return;
+                }
+                String head = pattern.substring(0, pattern.length() - 1);
+                if (pattern.endsWith("*") && !hasWildcards(head)) {
+                    prefixes.add(head);
+                    prefixLengths.add(head.length());
+                    return;
+                }
+            }
+            regexes.add((anchored ? "" : "(?:.*/)?") + globToRegex(pattern));
+        }
+
+        void compile() {
+            if (!regexes.isEmpty()) {
+                combined = Pattern.compile("(?:" + String.join(")|(?:", regexes) + ")");
+            }
+        }
+
+        /** Returns true if the path PATH, whose last component is NAME,
+         *  matches a pattern of this table. */
+        boolean matches(String path, String name) {
+            if (names.contains(name)) {
+                return true;
+            }
+            for (int length : suffixLengths) {
+                if (length > name.length()) {
+                    break;
+                }
+                if (suffixes.contains(name.substring(name.length() - length))) {
+                    return true;
+                }
+            }
+            for (int length : prefixLengths) {
+                if (length > name.length()) {
+                    break;
+                }
+                if (prefixes.contains(name.substring(0, length))) {
+                    return true;
+                }
+            }
+            return combined != null && combined.matcher(path).matches();
+        }
+    }
+
+    private final List<Run> runs = new ArrayList<>();
+
+    /** Compiles the patterns of the lines of CONTENT. */
+    Ignore(String content) {
+        Run run = null;
+        for (String line : content.split("\n")) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            boolean negated = line.startsWith("!");
+            if (negated) {
+                line = line.substring(1);
+            }
+            boolean directoryOnly = line.endsWith("/");
+            if (directoryOnly) {
+                line = line.substring(0, line.length() - 1);
+            }
+            if (line.isEmpty() || line.equals("/")) {
+                continue;
+            }
+            if (run == null || run.negated != negated) {
+                run = new Run(negated);
+                runs.add(run);
+            }
+            (directoryOnly ? run.directories : run.any).add(line);
+        }
+        for (Run compiled : runs) {
+            compiled.any.compile();
+            compiled.directories.compile();
+        }
+    }
+
+    /** Returns the rules of .gitletignore, compiled once per process. */
+    static synchronized Ignore rules() {
+        if (rules == null) {
+            rules = new Ignore(GITLETIGNORE.isFile() ? readContentsAsString(GITLETIGNORE) : "");
+        }
+        return rules;
+    }
+
+    boolean isEmpty() {
+        return runs.isEmpty();
+    }
+
+    /** Returns true if PATH, relative to the working directory with forward
+     *  slashes, or a directory above it is ignored. ISDIRECTORY tells
+     *  whether PATH is a directory. */
+    boolean matches(String path, boolean isDirectory) {
+        if (runs.isEmpty()) {
+            return false;
+        }
+        for (int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', slash + 1)) {
+            if (matchesOne(path.substring(0, slash), true)) {
+                return true;
+            }
+        }
+        return matchesOne(path, isDirectory);
+    }
+
+    /** Returns true if the file FILE of the working directory is ignored. */
+    static boolean isIgnored(File file) {
+        Ignore ignore = rules();
+        if (ignore.isEmpty()) {
+            return false;
+        }
+        String path = CWD.toPath().relativize(file.toPath()).toString().replace('\\', '/');
+        return ignore.matches(path, file.isDirectory());
+    }
+
+    /** Returns true if PATH itself, leaving out its parents, is ignored. */
+    private boolean matchesOne(String path, boolean isDirectory) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        for (int i = runs.size() - 1; i >= 0; i -= 1) {
+            if (runs.get(i).matches(path, name, isDirectory)) {
+                return !runs.get(i).negated;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasWildcards(String pattern) {
+        return pattern.indexOf('*') >= 0 || pattern.indexOf('?') >= 0
+                || pattern.indexOf('[') >= 0 || pattern.indexOf('\\') >= 0;
+    }
+
+    /** Returns a regular expression matching the paths GLOB matches: * and
+     *  ? stop at slashes, ** does not. */
+    private static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i += 1) {
+            char c = glob.charAt(i);
+            if (c == '*' && glob.startsWith("**/", i)) {
+                regex.append("(?:.*/)?");
+                i += 2;
+            } else if (c == '*' && glob.startsWith("**", i)) {
+                regex.append(".*");
+                i += 1;
+            } else if (c == '*') {
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else if (c == '[' && glob.indexOf(']', i + 1) > i + 1) {
+                int end = glob.indexOf(']', i + 1);
+                String set = glob.substring(i + 1, end);
+                if (set.startsWith("!")) {
+                    set = "^" + set.substring(1);
+                }
+                regex.append('[').append(set.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+                i = end;
+            } else if (c == '\\' && i + 1 < glob.length()) {
+                i += 1;
+                regex.append(Pattern.quote(String.valueOf(glob.charAt(i))));
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return regex.toString();
+    }
+}
@@ -1,94 +1,517 @@
 package gitlet;
 
-import java.io.File;
-import java.io.Serializable;
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 import static gitlet.Repository.INDEX;
+import static gitlet.Repository.INDEX_JOURNAL;
 import static gitlet.Utils.*;
 
+/** The staging area: for every path, the blob id it was last added with
+ *  (tracked), the blob id staged for the next commit, and whether its
+ *  removal is staged.
+ *
+ *  On disk the index is a sorted binary file of entries with an offset
+ *  table, which is memory-mapped and binary-searched, plus an append-only
+ *  journal of the entries changed since. save() only appends the entries
+ *  changed since the last save to the journal; once the journal grows past
+ *  an eighth of the entries, it is compacted into a new index file.
+ *
+ *  index:   "GIDX" version:int count:int offsets:int[count] entries
+ *  journal: records, each either PUT entry or CLEAR
+ *  entry:   pathLength:short path flags:byte size:long mtime:long
+ *           trackedIdLength:byte trackedId stagedIdLength:byte stagedId
+ *
+ *  size and mtime are the stat data of the working file when it was added,
+ *  or -1 when the entry was staged without reading the file.
+ */
 public class Index implements Serializable {
+    private static final long serialVersionUID = 5755751343884226570L;
+    /** key of the staging area in the shared object cache. */
+    private static final String CACHE_KEY = "index";
+
+    private static final byte[] MAGIC = {'G', 'I', 'D', 'X'};
+    private static final int VERSION = 1;
+    /** bytes before the offset table: magic, version and count. */
+    private static final int HEADER_SIZE = 12;
+
+    private static final byte PUT = 1;
+    private static final byte CLEAR = 2;
+
+    private static final int FLAG_REMOVED = 1;
+
+    /** the journal is never compacted while it holds fewer records than this. */
+    private static final int MIN_COMPACTION_RECORDS = 64;
+
+    /* The whole staging area used to be serialized through these three
+     * fields. They are only read to upgrade such an index file. */
     private Map<String, String> staged;  /* <filePath, stagingArea_hash> */
     private Set<String> rmStaged;
     private Map<String, String> tracked;
 
+    /** The state of one path. */
+    private static final class Entry {
+        static final Entry EMPTY = new Entry(null, null, false, -1, -1);
+
+        final String trackedId;
+        final String stagedId;
+        final boolean removed;
+        final long size;
+        final long mtime;
+
+        Entry(String trackedId, String stagedId, boolean removed, long size, long mtime) {
+            this.trackedId = trackedId;
+            this.stagedId = stagedId;
+            this.removed = removed;
+            this.size = size;
+            this.mtime = mtime;
+        }
+
+        boolean isEmpty() {
+            return trackedId == null && stagedId == null && !removed;
+        }
+
+        /** Returns this entry with nothing staged. */
+        Entry cleared() {
+            return new Entry(trackedId, null, false, size, mtime);
+        }
+    }
+
+    /** The mapped index file, or null if there is none yet. */
+    private transient ByteBuffer base;
+    private transient int baseCount;
+    /** true if a CLEAR newer than the index file was journalled. */
+    private transient boolean baseCleared;
+    /** Entries newer than the index file, from the journal or changed since. */
+    private transient TreeMap<String, Entry> overlay;
+    /** Entries changed since the last save, in the order they changed. */
+    private transient LinkedHashMap<String, Entry> pending;
+    private transient boolean pendingClear;
+    private transient int journalRecords;
+    /** true if save() must rewrite the index file. */
+    private transient boolean compactOnSave;
+
     public Index() {
-        staged = new HashMap<>();
-        rmStaged = new HashSet<>();
-        tracked = new HashMap<>();
+        overlay = new TreeMap<>();
+        pending = new LinkedHashMap<>();
+        compactOnSave = true;
     }
 
     public static Index fromFile() {
         if (!INDEX.exists()) { return null; }
-        return readObject(INDEX, Index.class);
+        long start = Trace.start();
+        Index index = ObjectCache.SHARED.get(CACHE_KEY, INDEX, Index::load);
+        Trace.end("Index.fromFile", start);
+        return index;
+    }
+
+    /** Returns the staging area of the worktree whose .gitlet directory is
+     *  GITLETDIR, or null if it has none. One of another worktree is only
+     *  for reading and must not be saved. */
+    static Index of(File gitletDir) {
+        if (gitletDir.equals(Repository.GITLET_DIR)) {
+            return fromFile();
+        }
+        File file = join(gitletDir, INDEX.getName());
+        return file.exists() ? load(file, join(gitletDir, INDEX_JOURNAL.getName())) : null;
+    }
+
+    private static Index load(File file) {
+        return load(file, INDEX_JOURNAL);
+    }
+
+    /** Maps the index file FILE and replays the journal JOURNAL over it. */
+    private static Index load(File file, File journal) {
+        Index index = new Index();
+        index.compactOnSave = false;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] magic = new byte[MAGIC.length];
+            if (mapped.remaining() < HEADER_SIZE) {
+                throw new IllegalArgumentException("truncated index");
+            }
+            mapped.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                return upgrade(file);
+            }
+            if (mapped.getInt() != VERSION) {
+                throw new IllegalArgumentException("unknown index version");
+            }
+            index.baseCount = mapped.getInt();
+            index.base = mapped;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        index.replayJournal(journal);
+        return index;
+    }
+
+    /** Reads an index file written with Java serialization by earlier
+     *  versions, and makes the next save() write the binary format. */
+    private static Index upgrade(File file) {
+        Index legacy = readObject(file, Index.class);
+        Index index = new Index();
+        for (Map.Entry<String, String> entry : legacy.tracked.entrySet()) {
+            index.put(entry.getKey(), new Entry(entry.getValue(), null, false, -1, -1));
+        }
+        for (Map.Entry<String, String> entry : legacy.staged.entrySet()) {
+            Entry current = index.entry(entry.getKey());
+            index.put(entry.getKey(), new Entry(current.trackedId, entry.getValue(),
+                    false, -1, -1));
+        }
+        for (String filePath : legacy.rmStaged) {
+            Entry current = index.entry(filePath);
+            index.put(filePath, new Entry(current.trackedId, null, true, -1, -1));
+        }
+        return index;
     }
 
     public String findBlobId(String filePath) {
-        return staged.get(filePath);
+        return entry(filePath).stagedId;
     }
 
     public void save() {
-        writeObject(INDEX, this);
+        long start = Trace.start();
+        if (compactOnSave || journalRecords > Math.max(MIN_COMPACTION_RECORDS, baseCount / 8)) {
+            compact();
+        } else {
+            appendPending();
+        }
+        Trace.end("Index.save", start);
+        ObjectCache.SHARED.put(CACHE_KEY, this, INDEX.length() + INDEX_JOURNAL.length());
     }
 
     public void clear() {
-        staged.clear();
-        rmStaged.clear();
+        for (Map.Entry<String, Entry> entry : overlay.entrySet()) {
+            entry.setValue(entry.getValue().cleared());
+        }
+        baseCleared = true;
+        for (Map.Entry<String, Entry> entry : pending.entrySet()) {
+            entry.setValue(entry.getValue().cleared());
+        }
+        pendingClear = true;
         save();
     }
 
     public boolean isClean() {
-        return staged.isEmpty() && rmStaged.isEmpty();
+        for (Entry entry : entries().values()) {
+            if (entry.stagedId != null || entry.removed) {
+                return false;
+            }
+        }
+        return true;
     }
 
+    /** Returns a copy of the staged paths and their blob ids. */
     public Map<String, String> getStaged() {
-        return staged;
+        Map<String, String> result = new HashMap<>();
+        for (Map.Entry<String, Entry> entry : entries().entrySet()) {
+            if (entry.getValue().stagedId != null) {
+                result.put(entry.getKey(), entry.getValue().stagedId);
+            }
+        }
+        return result;
     }
 
+    /** Returns a copy of every path ever added and its last blob id. */
     public Map<String, String> getTracked() {
-        return tracked;
+        Map<String, String> result = new HashMap<>();
+        for (Map.Entry<String, Entry> entry : entries().entrySet()) {
+            if (entry.getValue().trackedId != null) {
+                result.put(entry.getKey(), entry.getValue().trackedId);
+            }
+        }
+        return result;
     }
 
     public void add(String filePath, String blobId) {
-        staged.put(filePath, blobId);
-        rmStaged.remove(filePath);
-        tracked.put(filePath, blobId);
+        put(filePath, new Entry(blobId, blobId, false, -1, -1));
+    }
+
+    /** Stages BLOBID for FILE, recording the stat data of FILE, which
+     *  must currently hold the content of BLOBID. */
+    public void add(File file, String blobId) {
+        put(WorkingTree.key(file), new Entry(blobId, blobId, false, file.length(), file.lastModified()));
     }
 
     public void add(File file) {
-        String filePath = file.getPath();
         Blob blob = new Blob(file);
         blob.create();
-        String blobId = blob.getId();
-        add(filePath, blobId);
+        add(file, blob.getId());
     }
 
     public boolean isStaged(File file) {
-        return staged.containsKey(file.getPath());
+        return isStaged(WorkingTree.key(file));
     }
 
     public boolean isStaged(String filePath) {
-        return staged.containsKey(filePath);
+        return entry(filePath).stagedId != null;
+    }
+
+    /** Returns true if FILE still has the stat data recorded when it was
+     *  staged, so its content need not be hashed again. Files modified
+     *  no earlier than the index was written are never trusted, as they
+     *  may have changed again within the timestamp granularity. */
+    public boolean isStatClean(File file) {
+        Entry entry = entry(WorkingTree.key(file));
+        long mtime = file.lastModified();
+        long written = Math.max(INDEX.lastModified(), INDEX_JOURNAL.lastModified());
+        return entry.size >= 0 && entry.size == file.length()
+                && entry.mtime == mtime && mtime < written;
     }
 
     public void remove(String filePath) {
-        staged.remove(filePath);
-        rmStaged.add(filePath);
+        Entry current = entry(filePath);
+        put(filePath, new Entry(current.trackedId, null, true, -1, -1));
     }
 
     public void unstage(String filePath) {
-        staged.remove(filePath);
+        Entry current = entry(filePath);
+        if (current.stagedId != null) {
+            put(filePath, new Entry(current.trackedId, null, current.removed,
+                    current.size, current.mtime));
+        }
     }
 
     public void unremove(String filePath) {
-        rmStaged.remove(filePath);
+        Entry current = entry(filePath);
+        if (current.removed) {
+            put(filePath, new Entry(current.trackedId, current.stagedId, false,
+                    current.size, current.mtime));
+        }
     }
 
+    /** Returns a copy of the paths whose removal is staged. */
     public Set<String> getRmStaged() {
-        return rmStaged;
+        Set<String> result = new HashSet<>();
+        for (Map.Entry<String, Entry> entry : entries().entrySet()) {
+            if (entry.getValue().removed) {
+                result.add(entry.getKey());
+            }
+        }
+        return result;
     }
 
     public boolean isRmStaged(String filePath) {
-        return rmStaged.contains(filePath);
+        return entry(filePath).removed;
+    }
+
+    /* ENTRIES */
+
+    /** Returns the current entry of FILEPATH, never null. */
+    private Entry entry(String filePath) {
+        Entry entry = overlay.get(filePath);
+        if (entry != null) {
+            return entry;
+        }
+        entry = findInBase(filePath);
+        if (entry == null) {
+            return Entry.EMPTY;
+        }
+        return baseCleared ? entry.cleared() : entry;
+    }
+
+    private void put(String filePath, Entry entry) {
+        overlay.put(filePath, entry);
+        pending.put(filePath, entry);
+    }
+
+    /** Returns every non-empty entry, in path order. */
+    private TreeMap<String, Entry> entries() {
+        TreeMap<String, Entry> all = new TreeMap<>();
+        if (base != null) {
+            ByteBuffer buffer = base.duplicate();
+            buffer.position(HEADER_SIZE + 4 * baseCount);
+            for (int i = 0; i < baseCount; i += 1) {
+                String filePath = readPath(buffer);
+                Entry entry = readEntry(buffer);
+                all.put(filePath, baseCleared ? entry.cleared() : entry);
+            }
+        }
+        for (Map.Entry<String, Entry> entry : overlay.entrySet()) {
+            all.put(entry.getKey(), entry.getValue());
+        }
+        all.values().removeIf(Entry::isEmpty);
+        return all;
+    }
+
+    /** Binary-searches the index file for FILEPATH. */
+    private Entry findInBase(String filePath) {
+        if (base == null) {
+            return null;
+        }
+        ByteBuffer buffer = base.duplicate();
+        int entriesStart = HEADER_SIZE + 4 * baseCount;
+        int low = 0;
+        int high = baseCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            buffer.position(entriesStart + base.getInt(HEADER_SIZE + 4 * mid));
+            int cmp = readPath(buffer).compareTo(filePath);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return readEntry(buffer);
+            }
+        }
+        return null;
+    }
+
+    /* READING AND WRITING */
+
+    private static String readPath(ByteBuffer buffer) {
+        byte[] path = new byte[buffer.getShort() & 0xffff];
+        buffer.get(path);
+        return new String(path, StandardCharsets.UTF_8);
+    }
+
+    private static Entry readEntry(ByteBuffer buffer) {
+        byte flags = buffer.get();
+        long size = buffer.getLong();
+        long mtime = buffer.getLong();
+        String trackedId = readId(buffer);
+        String stagedId = readId(buffer);
+        return new Entry(trackedId, stagedId, (flags & FLAG_REMOVED) != 0, size, mtime);
+    }
+
+    private static String readId(ByteBuffer buffer) {
+        int length = buffer.get() & 0xff;
+        if (length == 0) {
+            return null;
+        }
+        byte[] id = new byte[length];
+        buffer.get(id);
+        return new String(id, StandardCharsets.US_ASCII);
+    }
+
+    private static void writeEntry(DataOutputStream out, String filePath, Entry entry)
+            throws IOException {
+        byte[] path = filePath.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(path.length);
+        out.write(path);
+        out.writeByte(entry.removed ? FLAG_REMOVED : 0);
+        out.writeLong(entry.size);
+        out.writeLong(entry.mtime);
+        writeId(out, entry.trackedId);
+        writeId(out, entry.stagedId);
+    }
+
+    private static void writeId(DataOutputStream out, String id) throws IOException {
+        if (id == null) {
+            out.writeByte(0);
+        } else {
+            out.writeByte(id.length());
+            out.write(id.getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    /** Applies the records of the journal to the overlay. A record cut
+     *  short by a crash ends the replay. */
+    private void replayJournal(File journal) {
+        if (!journal.isFile()) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(readContents(journal));
+        try {
+            while (buffer.hasRemaining()) {
+                byte op = buffer.get();
+                if (op == CLEAR) {
+                    for (Map.Entry<String, Entry> entry : overlay.entrySet()) {
+                        entry.setValue(entry.getValue().cleared());
+                    }
+                    baseCleared = true;
+                } else if (op == PUT) {
+                    String filePath = readPath(buffer);
+                    overlay.put(filePath, readEntry(buffer));
+                } else {
+                    break;
+                }
+                journalRecords += 1;
+            }
+        } catch (BufferUnderflowException excp) {
+            /* a partially written last record is ignored */
+        }
+    }
+
+    /** Appends the entries changed since the last save to the journal. */
+    private void appendPending() {
+        if (!pendingClear && pending.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            if (pendingClear) {
+                out.writeByte(CLEAR);
+                journalRecords += 1;
+            }
+            for (Map.Entry<String, Entry> entry : pending.entrySet()) {
+                out.writeByte(PUT);
+                writeEntry(out, entry.getKey(), entry.getValue());
+                journalRecords += 1;
+            }
+        } catch (IOException excp) {
+            throw error("Internal error writing index journal.");
+        }
+        try {
+            Files.write(INDEX_JOURNAL.toPath(), bytes.toByteArray(),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        pending.clear();
+        pendingClear = false;
+    }
+
+    /** Writes every entry into a new index file, replaces the old one with
+     *  it and empties the journal. */
+    private void compact() {
+        TreeMap<String, Entry> all = entries();
+        ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+        int[] offsets = new int[all.size()];
+        try (DataOutputStream out = new DataOutputStream(entryBytes)) {
+            int i = 0;
+            for (Map.Entry<String, Entry> entry : all.entrySet()) {
+                offsets[i] = out.size();
+                writeEntry(out, entry.getKey(), entry.getValue());
+                i += 1;
+            }
+        } catch (IOException excp) {
+            throw error("Internal error writing index.");
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + 4 * offsets.length);
+        header.put(MAGIC).putInt(VERSION).putInt(offsets.length);
+        for (int offset : offsets) {
+            header.putInt(offset);
+        }
+        File temp = new File(INDEX.getPath() + ".tmp");
+        writeContents(temp, header.array(), entryBytes.toByteArray());
+        try {
+            Files.move(temp.toPath(), INDEX.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        INDEX_JOURNAL.delete();
+
+        ByteBuffer newBase = ByteBuffer.allocate(header.capacity() + entryBytes.size());
+        newBase.put(header.array()).put(entryBytes.toByteArray());
+        base = newBase;
+        baseCount = offsets.length;
+        baseCleared = false;
+        overlay.clear();
+        pending.clear();
+        pendingClear = false;
+        journalRecords = 0;
+        compactOnSave = false;
     }
 }
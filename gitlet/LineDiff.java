@@ -0,0 +1,135 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Line diffs, with Myers' O((N+M)D) shortest edit script.
+ *
+ *  The common prefix and suffix are matched first, and the remaining
+ *  lines are compared as small integers rather than as strings.
+ *
+ *  @author mak.skid
+ */
+class LineDiff {
+
+    /** Returns the lines of CONTENT. A final newline does not start
+     *  another line. */
+    static String[] lines(byte[] content) {
+        String text = new String(content, StandardCharsets.UTF_8);
+        if (text.isEmpty()) {
+            return new String[0];
+        }
+        if (text.endsWith("\n")) {
+            text = text.substring(0, text.length() - 1);
+        }
+        return text.split("\n", -1);
+    }
+
+    /** Returns, for every line of B, the index of the line of A it is kept
+     *  from by a shortest edit script turning A into B, or -1 if the line
+     *  was inserted. */
+    static int[] match(String[] a, String[] b) {
+        int[] result = new int[b.length];
+        Arrays.fill(result, -1);
+        int prefix = 0;
+        while (prefix < a.length && prefix < b.length && a[prefix].equals(b[prefix])) {
+            result[prefix] = prefix;
+            prefix += 1;
+        }
+        int suffix = 0;
+        while (suffix < a.length - prefix && suffix < b.length - prefix
+                && a[a.length - 1 - suffix].equals(b[b.length - 1 - suffix])) {
+            result[b.length - 1 - suffix] = a.length - 1 - suffix;
+            suffix += 1;
+        }
+        int n = a.length - prefix - suffix;
+        int m = b.length - prefix - suffix;
+        if (n > 0 && m > 0) {
+            Map<String, Integer> symbols = new HashMap<>();
+            int[] x = symbolize(a, prefix, n, symbols);
+            int[] y = symbolize(b, prefix, m, symbols);
+            int[] middle = myers(x, y);
+            for (int j = 0; j < m; j += 1) {
+                if (middle[j] >= 0) {
+                    result[prefix + j] = prefix + middle[j];
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int[] symbolize(String[] lines, int from, int count, Map<String, Integer> symbols) {
+        int[] result = new int[count];
+        for (int i = 0; i < count; i += 1) {
+            result[i] = symbols.computeIfAbsent(lines[from + i], k -> symbols.size());
+        }
+        return result;
+    }
+
+    /** Returns the same as match for A and B, both non-empty. */
+    private static int[] myers(int[] a, int[] b) {
+        int n = a.length;
+        int m = b.length;
+        int offset = n + m + 1;
+        int[] v = new int[2 * offset + 1];
+        /* trace.get(d) holds v[-d-1 .. d+1] as it was before step d */
+        List<int[]> trace = new ArrayList<>();
+        for (int d = 0; ; d += 1) {
+            trace.add(Arrays.copyOfRange(v, offset - d - 1, offset + d + 2));
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) {
+                    x = v[offset + k + 1];
+                } else {
+                    x = v[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && a[x] == b[y]) {
+                    x += 1;
+                    y += 1;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    return backtrack(trace, d, n, m);
+                }
+            }
+        }
+    }
+
+    private static int[] backtrack(List<int[]> trace, int edits, int n, int m) {
+        int[] result = new int[m];
+        Arrays.fill(result, -1);
+        int x = n;
+        int y = m;
+        for (int d = edits; d > 0; d -= 1) {
+            int[] v = trace.get(d);
+            int base = d + 1;
+            int k = x - y;
+            int prevK;
+            if (k == -d || (k != d && v[base + k - 1] < v[base + k + 1])) {
+                prevK = k + 1;
+            } else {
+                prevK = k - 1;
+            }
+            int prevX = v[base + prevK];
+            int prevY = prevX - prevK;
+            while (x > prevX && y > prevY) {
+                x -= 1;
+                y -= 1;
+                result[y] = x;
+            }
+            x = prevX;
+            y = prevY;
+        }
+        while (x > 0 && y > 0) {
+            x -= 1;
+            y -= 1;
+            result[y] = x;
+        }
+        return result;
+    }
+}
@@ -1,5 +1,8 @@
 package gitlet;
 
+import java.util.Arrays;
+import java.util.List;
+
 import static gitlet.Repository.*;
 
 /** Driver class for Gitlet, a subset of the Git version-control system.
@@ -11,6 +14,8 @@ public class Main {
      *  <COMMAND> <OPERAND1> <OPERAND2> ... 
      */
     public static void main(String[] args) {
+        Trace.enableFromEnvironment();
+        args = stripTraceOption(args);
         if (args.length < 1) {
             System.out.println("Please enter a command.");
             System.exit(0);
@@ -18,12 +23,27 @@ public class Main {
         String firstArg = args[0];
         switch (firstArg) {
             case "init":
-                validateArgs(args, 1);
-                init();
+                if (args.length == 2 && args[1].startsWith("--object-format=")) {
+                    validateArgs(args, 2);
+                    HashAlgorithm objectFormat = HashAlgorithm.forName(
+                            args[1].substring("--object-format=".length()));
+                    if (objectFormat == null || !objectFormat.isCryptographic()) {
+                        System.out.println("Unsupported object format.");
+                        System.exit(0);
+                    }
+                    init(objectFormat);
+                } else {
+                    validateArgs(args, 1);
+                    init();
+                }
                 break;
             case "add":
-                validateArgs(args, 2);
-                add(args[1]);
+                validateMinArgs(args, 2);
+                if (args.length == 2 && args[1].equals("-A")) {
+                    addAll();
+                } else {
+                    add(Arrays.asList(args).subList(1, args.length));
+                }
                 break;
             case "commit":
                 validateArgs(args, 2);
@@ -35,12 +55,17 @@ public class Main {
                 commit(message);
                 break;
             case "rm":
-                validateArgs(args, 2);
-                rm(args[1]);
+                validateMinArgs(args, 2);
+                rm(Arrays.asList(args).subList(1, args.length));
                 break;
             case "log":
-                validateArgs(args, 1);
-                log();
+                if (args.length == 3 && args[1].equals("--")) {
+                    validateArgs(args, 3);
+                    log(args[2]);
+                } else {
+                    validateArgs(args, 1);
+                    log();
+                }
                 break;
             case "global-log":
                 validateArgs(args, 1);
@@ -80,6 +105,32 @@ public class Main {
                 String branchToRmName = args[1];
                 rmBranch(branchToRmName);
                 break;
+            case "tag":
+                if (args.length == 1) {
+                    validateArgs(args, 1);
+                    tag();
+                } else if (args[1].equals("-d")) {
+                    validateArgs(args, 3);
+                    rmTag(args[2]);
+                } else if (args[1].equals("-a")) {
+                    if (args.length < 5 || !args[3].equals("-m")) {
+                        validateArgs(args, 0);
+                    }
+                    validateArgs(args, args.length == 6 ? 6 : 5);
+                    tag(args[2], args.length == 6 ? args[5] : null, args[4]);
+                } else {
+                    validateArgs(args, args.length == 3 ? 3 : 2);
+                    tag(args[1], args.length == 3 ? args[2] : null, null);
+                }
+                break;
+            case "show-ref":
+                validateArgs(args, 1);
+                showRef();
+                break;
+            case "pack-refs":
+                validateArgs(args, 1);
+                packRefs();
+                break;
             case "reset":
                 validateArgs(args, 2);
                 String commitId = args[1];
@@ -90,14 +141,254 @@ public class Main {
                 String branchToMergeName = args[1];
                 merge(branchToMergeName);
                 break;
+            case "cherry-pick":
+                validateArgs(args, 2);
+                cherryPick(args[1]);
+                break;
+            case "rebase":
+                validateArgs(args, 2);
+                rebase(args[1]);
+                break;
+            case "stash":
+                if (args.length == 1 || args[1].equals("push")) {
+                    validateArgs(args, args.length == 1 ? 1 : 2);
+                    stashPush();
+                } else if (args[1].equals("list")) {
+                    validateArgs(args, 2);
+                    stashList();
+                } else if (args[1].equals("pop")) {
+                    validateArgs(args, args.length == 3 ? 3 : 2);
+                    stashPop(args.length == 3 ? parseStashIndex(args[2]) : 0);
+                } else if (args[1].equals("drop")) {
+                    validateArgs(args, args.length == 3 ? 3 : 2);
+                    stashDrop(args.length == 3 ? parseStashIndex(args[2]) : 0);
+                } else {
+                    validateArgs(args, 0);
+                }
+                break;
+            case "sparse-checkout":
+                validateMinArgs(args, 2);
+                if (args[1].equals("set") && args.length > 2) {
+                    sparseCheckoutSet(Arrays.asList(args).subList(2, args.length));
+                } else if (args[1].equals("list")) {
+                    validateArgs(args, 2);
+                    sparseCheckoutList();
+                } else if (args[1].equals("disable")) {
+                    validateArgs(args, 2);
+                    sparseCheckoutDisable();
+                } else {
+                    validateArgs(args, 0);
+                }
+                break;
+            case "gc":
+                validateArgs(args, 1);
+                gc();
+                break;
+            case "prune":
+                if (args.length == 1) {
+                    validateArgs(args, 1);
+                    prune(0);
+                } else {
+                    validateArgs(args, 2);
+                    prune(parseSeconds(args[1]));
+                }
+                break;
+            case "blame":
+                validateArgs(args, 2);
+                blame(args[1]);
+                break;
+            case "fsck":
+                validateArgs(args, 1);
+                fsck();
+                break;
+            case "add-remote":
+                validateArgs(args, 3);
+                addRemote(args[1], args[2]);
+                break;
+            case "rm-remote":
+                validateArgs(args, 2);
+                rmRemote(args[1]);
+                break;
+            case "fetch":
+                validateArgs(args, 3);
+                fetch(args[1], args[2]);
+                break;
+            case "pull":
+                validateArgs(args, 3);
+                pull(args[1], args[2]);
+                break;
+            case "push":
+                validateArgs(args, 3);
+                push(args[1], args[2]);
+                break;
+            case "clone":
+                if (args.length == 3 && args[1].equals("--shared")) {
+                    validateArgs(args, 3);
+                    Repository.clone(args[2], true);
+                } else {
+                    validateArgs(args, 2);
+                    Repository.clone(args[1], false);
+                }
+                break;
+            case "add-alternate":
+                validateArgs(args, 2);
+                addAlternate(args[1]);
+                break;
+            case "worktree":
+                validateMinArgs(args, 2);
+                if (args[1].equals("add")) {
+                    validateArgs(args, args.length == 4 ? 4 : 3);
+                    worktreeAdd(args[2], args.length == 4 ? args[3] : null);
+                } else if (args[1].equals("list")) {
+                    validateArgs(args, 2);
+                    worktreeList();
+                } else if (args[1].equals("prune")) {
+                    validateArgs(args, 2);
+                    worktreePrune();
+                } else {
+                    validateArgs(args, 0);
+                }
+                break;
+            case "cat-file":
+                validateArgs(args, 2);
+                if (args[1].equals("--batch")) {
+                    catFile(false);
+                } else if (args[1].equals("--batch-check")) {
+                    catFile(true);
+                } else {
+                    validateArgs(args, 0);
+                }
+                break;
+            case "rev-list":
+                validateMinArgs(args, 1);
+                boolean stdin = args.length > 1 && args[1].equals("--stdin");
+                revList(Arrays.asList(args).subList(stdin ? 2 : 1, args.length), stdin);
+                break;
+            case "bisect":
+                validateMinArgs(args, 2);
+                bisect(args);
+                break;
+            case "grep":
+                validateMinArgs(args, 2);
+                grep(args[1], Arrays.asList(args).subList(2, args.length));
+                break;
+            case "archive":
+                validateMinArgs(args, 2);
+                archive(args);
+                break;
+            case "archive-history":
+                validateArgs(args, 2);
+                archiveHistory(args[1]);
+                break;
+            case "unshallow":
+                validateArgs(args, 1);
+                unshallow();
+                break;
+            case "watch":
+                validateArgs(args, 1);
+                Watcher.run();
+                break;
             default:
                 System.out.println("No command with that name exists.");
                 break;
         }
     }
 
+    /** Enables tracing if the first argument is --trace or --trace=MODE,
+     *  and returns the remaining arguments. */
+    private static String[] stripTraceOption(String[] args) {
+        if (args.length == 0 || !args[0].startsWith("--trace")) {
+            return args;
+        }
+        if (args[0].equals("--trace")) {
+            Trace.enable("summary");
+        } else if (args[0].startsWith("--trace=")) {
+            Trace.enable(args[0].substring("--trace=".length()));
+        } else {
+            return args;
+        }
+        return Arrays.copyOfRange(args, 1, args.length);
+    }
+
+    /** Parses archive COMMIT [--format=tar|zip] [-o FILE]. The format
+     *  defaults to that named by the extension of FILE, or tar. */
+    private static void archive(String[] args) {
+        String format = null;
+        String output = null;
+        for (int i = 2; i < args.length; i += 1) {
+            if (args[i].startsWith("--format=")) {
+                format = args[i].substring("--format=".length());
+            } else if (args[i].equals("-o") && i + 1 < args.length) {
+                i += 1;
+                output = args[i];
+            } else {
+                validateArgs(args, 0);
+            }
+        }
+        if (format == null) {
+            format = output != null && output.endsWith(".zip") ? "zip" : "tar";
+        }
+        Repository.archive(args[1], format, output);
+    }
+
+    /** Parses bisect start [BAD [GOOD...]], bisect good|bad|skip [COMMIT],
+     *  bisect reset and bisect run COMMAND [ARGS...]. */
+    private static void bisect(String[] args) {
+        List<String> rest = Arrays.asList(args).subList(2, args.length);
+        switch (args[1]) {
+            case "start":
+                bisectStart(rest.isEmpty() ? null : rest.get(0),
+                        rest.isEmpty() ? List.of() : rest.subList(1, rest.size()));
+                break;
+            case "good":
+            case "bad":
+            case "skip":
+                validateArgs(args, args.length == 3 ? 3 : 2);
+                bisectMark(args[1], rest.isEmpty() ? null : rest.get(0));
+                break;
+            case "reset":
+                validateArgs(args, 2);
+                bisectReset();
+                break;
+            case "run":
+                validateMinArgs(args, 3);
+                bisectRun(rest);
+                break;
+            default:
+                validateArgs(args, 0);
+        }
+    }
+
+
+    private static int parseStashIndex(String arg) {
+        String index = arg.startsWith("stash@{") && arg.endsWith("}")
+                ? arg.substring("stash@{".length(), arg.length() - 1) : arg;
+        try {
+            return Integer.parseInt(index);
+        } catch (NumberFormatException excp) {
+            System.out.println("No stash entry found.");
+            System.exit(0);
+            return 0;
+        }
+    }
+
+    private static long parseSeconds(String arg) {
+        try {
+            return Long.parseLong(arg);
+        } catch (NumberFormatException e) {
+            System.out.println("Incorrect operands.");
+            System.exit(0);
+            return 0;
+        }
+    }
+
+    /** Like validateArgs, but allows more than N arguments. */
+    public static void validateMinArgs(String[] args, int n) {
+        validateArgs(args, Math.max(n, args.length));
+    }
+
     public static void validateArgs(String[] args, int n) {
-        if (!args[0].equals("init") && !GITLET_DIR.exists()) {
+        if (!args[0].equals("init") && !args[0].equals("clone") && !GITLET_DIR.exists()) {
             System.out.println("Not in an initialized Gitlet directory.");
             System.exit(0);
         }
@@ -0,0 +1,120 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/** An in-process cache of deserialized objects, bounded by the number of
+ *  bytes the cached objects took on disk and evicting the least recently
+ *  used object first.
+ *
+ *  Commit.find, Blob.fromFile and Index.fromFile go through the shared
+ *  instance, so a command that looks up the same object several times only
+ *  reads and deserializes it once. All methods are safe to call from
+ *  several threads; objects are loaded outside the lock, so two threads
+ *  missing on the same key may both load it.
+ *
+ *  Cached objects are shared, so callers must copy anything they intend
+ *  to modify.
+ *
+ *  @author mak.skid
+ */
+class ObjectCache {
+
+    /** Capacity of the shared cache: 64 MiB of on-disk object size. */
+    static final long DEFAULT_CAPACITY_BYTES = 64L * 1024 * 1024;
+
+    /** The cache shared by every object lookup in this process. */
+    static final ObjectCache SHARED = new ObjectCache(DEFAULT_CAPACITY_BYTES);
+
+    /** A cached object and the number of bytes it is charged for. */
+    private static class Entry {
+        final Object value;
+        final long weight;
+
+        Entry(Object value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    private final long capacityBytes;
+    /** Entries in access order, least recently used first. */
+    private final LinkedHashMap<String, Entry> entries =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private long sizeBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    ObjectCache(long capacityBytes) {
+        this.capacityBytes = capacityBytes;
+    }
+
+    /** Returns the object cached under KEY, or reads it from SOURCE with
+     *  LOADER and caches it, charged with the length of SOURCE. */
+    <T> T get(String key, File source, Function<File, T> loader) {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits.incrementAndGet();
+                @SuppressWarnings("unchecked")
+                T value = (T) entry.value;
+                return value;
+            }
+        }
+        misses.incrementAndGet();
+        T value = loader.apply(source);
+        put(key, value, source.length());
+        return value;
+    }
+
+    /** Caches VALUE under KEY, charged with WEIGHT bytes. Objects larger
+     *  than the whole cache are not cached. */
+    synchronized void put(String key, Object value, long weight) {
+        invalidate(key);
+        if (weight > capacityBytes) {
+            return;
+        }
+        entries.put(key, new Entry(value, weight));
+        sizeBytes += weight;
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (sizeBytes > capacityBytes && eldest.hasNext()) {
+            sizeBytes -= eldest.next().getValue().weight;
+            eldest.remove();
+        }
+    }
+
+    /** Drops the object cached under KEY, if any. */
+    synchronized void invalidate(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            sizeBytes -= removed.weight;
+        }
+    }
+
+    /** Drops every cached object. Counters are kept. */
+    synchronized void clear() {
+        entries.clear();
+        sizeBytes = 0;
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    long getCapacityBytes() {
+        return capacityBytes;
+    }
+}
@@ -0,0 +1,185 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/** A single file holding many objects, each stored exactly as its loose
+ *  file would be, with a sorted table of ids for binary search.
+ *
+ *  "GPAK" version:int count:int idLength:int
+ *  table:   count * (id:byte[idLength] type:byte offset:long length:int)
+ *  objects: the contents, in table order
+ *
+ *  The table is memory-mapped; objects are read with positional reads, so
+ *  a pack may be larger than a mapped buffer can be.
+ *
+ *  @author mak.skid
+ */
+class PackFile {
+
+    static final byte COMMIT = 1;
+    static final byte BLOB = 2;
+    static final byte CHUNK = 3;
+
+    private static final byte[] MAGIC = {'G', 'P', 'A', 'K'};
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    private final File file;
+    private final ByteBuffer table;
+    private final int count;
+    private final int idLength;
+    private final int entrySize;
+
+    private PackFile(File file, ByteBuffer table, int count, int idLength) {
+        this.file = file;
+        this.table = table;
+        this.count = count;
+        this.idLength = idLength;
+        this.entrySize = idLength + 1 + 8 + 4;
+    }
+
+    /** Opens the pack FILE. Throws IllegalArgumentException if it is not one. */
+    static PackFile open(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            header.flip();
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!java.util.Arrays.equals(magic, MAGIC) || header.getInt() != VERSION) {
+                throw new IllegalArgumentException("not a pack file: " + file);
+            }
+            int count = header.getInt();
+            int idLength = header.getInt();
+            long tableSize = (long) count * (idLength + 1 + 8 + 4);
+            ByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, tableSize);
+            return new PackFile(file, table, count, idLength);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes a pack to FILE holding, for every id in OBJECTS, the contents
+     *  of the file it maps to, tagged with the type it maps to. All ids
+     *  must have the same length. */
+    static void write(File file, SortedMap<String, Map.Entry<Byte, File>> objects) {
+        int idLength = objects.isEmpty() ? 0 : objects.firstKey().length();
+        int entrySize = idLength + 1 + 8 + 4;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + objects.size() * entrySize);
+        header.put(MAGIC).putInt(VERSION).putInt(objects.size()).putInt(idLength);
+        long offset = header.capacity();
+        for (Map.Entry<String, Map.Entry<Byte, File>> object : objects.entrySet()) {
+            long length = object.getValue().getValue().length();
+            header.put(object.getKey().getBytes(StandardCharsets.US_ASCII))
+                  .put(object.getValue().getKey())
+                  .putLong(offset)
+                  .putInt((int) length);
+            offset += length;
+        }
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            out.write(header.array());
+            for (Map.Entry<Byte, File> object : objects.values()) {
+                try (InputStream in = Files.newInputStream(object.getValue().toPath())) {
+                    in.transferTo(out);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /** Returns the position in the table of ID, or -1. */
+    private int find(String id) {
+        if (id.length() != idLength) {
+            return -1;
+        }
+        byte[] key = id.getBytes(StandardCharsets.US_ASCII);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareId(mid, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int compareId(int position, byte[] key) {
+        int base = position * entrySize;
+        for (int i = 0; i < idLength; i += 1) {
+            int cmp = Byte.compare(table.get(base + i), key[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns the type of object ID, or 0 if the pack lacks it. */
+    byte type(String id) {
+        int position = find(id);
+        return position < 0 ? 0 : table.get(position * entrySize + idLength);
+    }
+
+    boolean contains(String id) {
+        return find(id) >= 0;
+    }
+
+    /** Returns the contents of object ID, or null if the pack lacks it. */
+    byte[] read(String id) {
+        int position = find(id);
+        if (position < 0) {
+            return null;
+        }
+        int base = position * entrySize + idLength + 1;
+        long offset = table.getLong(base);
+        int length = table.getInt(base + 8);
+        ByteBuffer contents = ByteBuffer.allocate(length);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (contents.hasRemaining()) {
+                if (channel.read(contents, offset + contents.position()) < 0) {
+                    throw new IllegalArgumentException("truncated pack file: " + file);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return contents.array();
+    }
+
+    /** Returns the ids of the objects of type TYPE, in id order. */
+    List<String> ids(byte type) {
+        List<String> ids = new ArrayList<>();
+        byte[] id = new byte[idLength];
+        for (int i = 0; i < count; i += 1) {
+            int base = i * entrySize;
+            if (table.get(base + idLength) == type) {
+                table.get(base, id);
+                ids.add(new String(id, StandardCharsets.US_ASCII));
+            }
+        }
+        return ids;
+    }
+}
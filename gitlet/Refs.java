@@ -0,0 +1,228 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** A snapshot of the refs of a repository and of its HEAD.
+ *
+ *  Refs are named like "refs/heads/master" and "refs/tags/v1.0". Each is
+ *  either a loose file of that name under .gitlet or a line of the sorted
+ *  .gitlet/packed-refs file; a loose ref overrides a packed one. The
+ *  snapshot reads both once, so listing thousands of refs costs one read
+ *  of packed-refs and a walk of the few loose ones. Updates go to loose
+ *  files, and to the snapshot, which the process keeps for its
+ *  repository. Every worktree shares the refs of the repository but has
+ *  its own HEAD.
+ *
+ *  packed-refs holds "id name" lines sorted by name. An annotated tag is
+ *  followed by a "^commitId" line so that it can be peeled without
+ *  reading the tag object.
+ *
+ *  @author mak.skid
+ */
+class Refs {
+
+    static final String HEADS = "refs/heads/";
+    static final String TAGS = "refs/tags/";
+    static final String REMOTES = "refs/remotes/";
+
+    private static Refs local;
+
+    /** the .gitlet directory holding the refs, shared by every worktree. */
+    private final File commonDir;
+    /** the HEAD file of the worktree. */
+    private final File headFile;
+    private final TreeMap<String, String> refs = new TreeMap<>();
+    private final Set<String> packed = new HashSet<>();
+    private final Map<String, String> peeled = new HashMap<>();
+    private String head;
+
+    private Refs(File gitletDir) {
+        commonDir = commonDir(gitletDir);
+        headFile = join(gitletDir, HEAD.getName());
+    }
+
+    /** Returns the refs of the repository in CWD, read once per process. */
+    static synchronized Refs snapshot() {
+        if (local == null) {
+            local = read(GITLET_DIR);
+        }
+        return local;
+    }
+
+    /** Returns the refs of the repository or worktree whose .gitlet is
+     *  GITLETDIR. */
+    static Refs snapshot(File gitletDir) {
+        return gitletDir.equals(GITLET_DIR) ? snapshot() : read(gitletDir);
+    }
+
+    private static Refs read(File gitletDir) {
+        long start = Trace.start();
+        Refs snapshot = new Refs(gitletDir);
+        File packedRefs = join(snapshot.commonDir, PACKED_REFS.getName());
+        if (packedRefs.isFile()) {
+            String last = null;
+            for (String line : readContentsAsString(packedRefs).split("\n")) {
+                if (line.startsWith("^") && last != null) {
+                    snapshot.peeled.put(last, line.substring(1));
+                } else if (!line.isEmpty() && !line.startsWith("#")) {
+                    int space = line.indexOf(' ');
+                    last = line.substring(space + 1);
+                    snapshot.refs.put(last, line.substring(0, space));
+                    snapshot.packed.add(last);
+                }
+            }
+        }
+        File refsDir = join(snapshot.commonDir, REFS_DIR.getName());
+        if (refsDir.isDirectory()) {
+            try (Stream<Path> files = Files.walk(refsDir.toPath())) {
+                for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                    String name = snapshot.commonDir.toPath().relativize(file).toString()
+                            .replace(File.separatorChar, '/');
+                    snapshot.refs.put(name, readContentsAsString(file.toFile()).trim());
+                    snapshot.peeled.remove(name);
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        snapshot.head = snapshot.headFile.isFile() ? readContentsAsString(snapshot.headFile) : null;
+        Trace.end("Refs.read", start, snapshot.refs.size());
+        return snapshot;
+    }
+
+    /** Returns the id ref NAME points to, or null if there is no such ref. */
+    String get(String name) {
+        return refs.get(name);
+    }
+
+    /** Returns the refs whose names start with PREFIX, by name without it. */
+    SortedMap<String, String> withPrefix(String prefix) {
+        SortedMap<String, String> result = new TreeMap<>();
+        for (Map.Entry<String, String> ref : refs.tailMap(prefix).entrySet()) {
+            if (!ref.getKey().startsWith(prefix)) {
+                break;
+            }
+            result.put(ref.getKey().substring(prefix.length()), ref.getValue());
+        }
+        return result;
+    }
+
+    /** Returns every ref by name. */
+    SortedMap<String, String> all() {
+        return Collections.unmodifiableSortedMap(refs);
+    }
+
+    /** Returns the commit ref NAME points to, through an annotated tag if
+     *  it points to one, or null if there is no such ref. */
+    String peel(String name) {
+        String peeledId = peeled.get(name);
+        if (peeledId != null) {
+            return peeledId;
+        }
+        String id = refs.get(name);
+        if (id != null && Tag.exists(commonDir, id)) {
+            return Tag.find(commonDir, id).getTarget();
+        }
+        return id;
+    }
+
+    /** Returns the name of the branch HEAD is on. */
+    String currentBranch() {
+        return head.replace(HEAD_BRANCH_REF_PATH, "").trim();
+    }
+
+    /** Returns the head commit of the current branch. */
+    String headCommitId() {
+        return refs.get(HEADS + currentBranch());
+    }
+
+    void setCurrentBranch(String branchName) {
+        head = HEAD_BRANCH_REF_PATH + branchName;
+        writeContents(headFile, head);
+    }
+
+    /** Returns true if NAME may follow a prefix such as HEADS to name a
+     *  ref: it is not empty and has no empty, "." or ".." component, so
+     *  the ref stays a file below its prefix. */
+    static boolean isValidName(String name) {
+        if (name.isEmpty() || name.indexOf('\\') >= 0) {
+            return false;
+        }
+        for (String component : name.split("/", -1)) {
+            if (component.isEmpty() || component.equals(".") || component.equals("..")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns true if ref NAME cannot be stored next to the existing
+     *  refs because one of them is a directory above it or below it. */
+    boolean conflicts(String name) {
+        for (String other : refs.keySet()) {
+            if (other.startsWith(name + "/") || name.startsWith(other + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Points ref NAME at ID. */
+    void update(String name, String id) {
+        File file = join(commonDir, name.split("/"));
+        file.getParentFile().mkdirs();
+        writeContents(file, id);
+        refs.put(name, id);
+        peeled.remove(name);
+    }
+
+    /** Deletes ref NAME, loose and packed. */
+    void delete(String name) {
+        join(commonDir, name.split("/")).delete();
+        refs.remove(name);
+        peeled.remove(name);
+        if (packed.remove(name)) {
+            writePacked();
+        }
+    }
+
+    /** Moves every ref into packed-refs and deletes the loose files. */
+    void pack() {
+        packed.clear();
+        packed.addAll(refs.keySet());
+        writePacked();
+        for (String name : refs.keySet()) {
+            join(commonDir, name.split("/")).delete();
+        }
+    }
+
+    private void writePacked() {
+        StringBuilder sb = new StringBuilder("# pack-refs\n");
+        for (Map.Entry<String, String> ref : refs.entrySet()) {
+            if (!packed.contains(ref.getKey())) {
+                continue;
+            }
+            sb.append(ref.getValue()).append(' ').append(ref.getKey()).append('\n');
+            String target = peel(ref.getKey());
+            if (!target.equals(ref.getValue())) {
+                peeled.put(ref.getKey(), target);
+                sb.append('^').append(target).append('\n');
+            }
+        }
+        File packedRefs = join(commonDir, PACKED_REFS.getName());
+        File temp = join(commonDir, PACKED_REFS.getName() + ".tmp");
+        writeContents(temp, sb.toString());
+        if (!temp.renameTo(packedRefs)) {
+            throw error("Could not write %s.", packedRefs);
+        }
+    }
+}
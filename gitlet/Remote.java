@@ -0,0 +1,331 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** Another repository on the same filesystem, named by the path of its
+ *  .gitlet directory.
+ *
+ *  Objects are exchanged by walking the commits from a branch head in the
+ *  sending repository and stopping at the first commit the receiving one
+ *  already has, so only the missing commits, blobs and chunks are copied.
+ *  Objects a repository can read from its alternates count as its own.
+ *  Loose objects are hardlinked where the filesystem allows it and copied
+ *  otherwise; archived objects are streamed out of the sender's packs.
+ *  Commits are written last, oldest first, so an interrupted transfer
+ *  never leaves a commit whose objects or parents are missing.
+ *
+ *  @author mak.skid
+ */
+class Remote {
+
+    /** The name of the remote a clone is created with. */
+    static final String ORIGIN = "origin";
+
+    private final File gitletDir;
+    private final File commonDir;
+    private final List<File> alternates;
+    private final File commitsDir;
+    private final File objectsDir;
+    private final File chunksDir;
+    private Refs refs;
+
+    Remote(File gitletDir) {
+        this.gitletDir = gitletDir;
+        commonDir = commonDir(gitletDir);
+        alternates = Alternates.of(commonDir);
+        commitsDir = join(commonDir, COMMITS_DIR.getName());
+        objectsDir = join(commonDir, OBJECTS_DIR.getName());
+        chunksDir = join(objectsDir, CHUNKS_DIR.getName());
+    }
+
+    /** Returns the local repository. */
+    static Remote local() {
+        return new Remote(GITLET_DIR);
+    }
+
+    /** Returns the repository whose .gitlet directory is at PATH, with '/'
+     *  as the separator, relative to CWD unless absolute. */
+    static Remote at(String path) {
+        File dir = new File(path.replace("/", File.separator));
+        if (!dir.isAbsolute()) {
+            dir = join(CWD, dir.getPath());
+        }
+        return new Remote(dir.toPath().normalize().toFile());
+    }
+
+    /** Returns the remote NAME, exiting if it is unknown or its directory
+     *  is gone. */
+    static Remote named(String name) {
+        File config = join(REMOTES_DIR, name);
+        if (!config.isFile()) {
+            System.out.println("A remote with that name does not exist.");
+            System.exit(0);
+        }
+        Remote remote = at(readContentsAsString(config));
+        remote.exitIfMissing();
+        return remote;
+    }
+
+    File getGitletDir() {
+        return gitletDir;
+    }
+
+    void exitIfMissing() {
+        if (!join(gitletDir, HEAD.getName()).isFile()) {
+            System.out.println("Remote directory not found.");
+            System.exit(0);
+        }
+    }
+
+    /** Returns the name of the object format of this repository. */
+    String objectFormat() {
+        File format = join(commonDir, OBJECT_FORMAT.getName());
+        return format.isFile() ? readContentsAsString(format).trim() : HashAlgorithm.SHA1.getName();
+    }
+
+    /** Returns the directory the tracked paths of this repository are
+     *  recorded under. */
+    String keyRoot() {
+        File root = join(gitletDir, KEY_ROOT.getName());
+        if (root.isFile()) {
+            return readContentsAsString(root);
+        }
+        return gitletDir.getAbsoluteFile().getParentFile().getPath();
+    }
+
+    /** Exits unless this repository and OTHER can exchange objects: their
+     *  ids must be computed the same way over the same paths. */
+    void exitIfIncompatible(Remote other) {
+        if (!objectFormat().equals(other.objectFormat())) {
+            System.out.println("Remote repository uses a different object format.");
+            System.exit(0);
+        }
+        if (!keyRoot().equals(other.keyRoot())) {
+            System.out.println("Remote repository tracks files under a different directory.");
+            System.exit(0);
+        }
+    }
+
+    private Refs refs() {
+        if (refs == null) {
+            refs = Refs.snapshot(gitletDir);
+        }
+        return refs;
+    }
+
+    /** Returns the branch names of this repository. */
+    List<String> branches() {
+        return new ArrayList<>(refs().withPrefix(Refs.HEADS).keySet());
+    }
+
+    /** Returns the head commit id of BRANCH, or null if there is none. */
+    String branchHead(String branch) {
+        return refs().get(Refs.HEADS + branch);
+    }
+
+    void setBranchHead(String branch, String commitId) {
+        refs().update(Refs.HEADS + branch, commitId);
+    }
+
+    /** Returns the name of the current branch of this repository. */
+    String currentBranch() {
+        return refs().currentBranch();
+    }
+
+    private File commitFile(String commitId) {
+        return join(commitsDir, commitId.substring(0, 2), commitId.substring(2));
+    }
+
+    /** Returns the file holding the object whose own file would be FILE,
+     *  which is in one of the alternates if they hold it. */
+    private File stored(File file) {
+        return Alternates.locate(commonDir, alternates, file);
+    }
+
+    private List<PackFile> packs() {
+        List<PackFile> packs = new ArrayList<>();
+        List<File> objectsDirs = new ArrayList<>(List.of(objectsDir));
+        for (File alternate : alternates) {
+            objectsDirs.add(join(alternate, OBJECTS_DIR.getName()));
+        }
+        for (File dir : objectsDirs) {
+            File coldDir = join(dir, COLD_DIR.getName());
+            List<String> names = plainFilenamesIn(coldDir);
+            if (names != null) {
+                for (String name : names) {
+                    if (name.endsWith(".pack")) {
+                        packs.add(PackFile.open(join(coldDir, name)));
+                    }
+                }
+            }
+        }
+        return packs;
+    }
+
+    private Set<String> shallowBoundaries() {
+        File shallow = join(commonDir, SHALLOW.getName());
+        if (!shallow.isFile()) {
+            return Collections.emptySet();
+        }
+        return Arrays.stream(readContentsAsString(shallow).split("\n"))
+                .filter(line -> !line.isEmpty())
+                .collect(Collectors.toSet());
+    }
+
+    /** Returns whether FILE or one of PACKS holds object ID. */
+    private static boolean has(File file, String id, List<PackFile> packs) {
+        if (file.isFile()) {
+            return true;
+        }
+        for (PackFile pack : packs) {
+            if (pack.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the contents of object ID, from FILE or one of PACKS. */
+    private static byte[] read(File file, String id, List<PackFile> packs) {
+        if (file.isFile()) {
+            return readContents(file);
+        }
+        for (PackFile pack : packs) {
+            byte[] contents = pack.read(id);
+            if (contents != null) {
+                return contents;
+            }
+        }
+        throw error("Missing object %s in %s.", id, file.getParentFile());
+    }
+
+    /** Makes TO hold object ID: a hardlink or copy of FROM if it is loose,
+     *  or its contents from one of PACKS. */
+    private static void copy(File from, File to, String id, List<PackFile> packs) {
+        if (to.exists()) {
+            return;
+        }
+        to.getParentFile().mkdirs();
+        if (!from.isFile()) {
+            writeContents(to, read(from, id, packs));
+            return;
+        }
+        try {
+            Files.createLink(to.toPath(), from.toPath());
+        } catch (IOException | UnsupportedOperationException excp) {
+            try {
+                Files.copy(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException copyExcp) {
+                throw new IllegalArgumentException(copyExcp.getMessage());
+            }
+        }
+    }
+
+    /** Returns commit COMMITID of this repository. */
+    Commit readCommit(String commitId) {
+        return deserialize(read(stored(commitFile(commitId)), commitId, packs()), Commit.class);
+    }
+
+    /** Returns whether ANCESTORID is HEADID or one of its ancestors in this
+     *  repository, looking no further back than the shallow boundaries. */
+    boolean isAncestor(String ancestorId, String headId) {
+        Set<String> boundaries = shallowBoundaries();
+        List<PackFile> packs = packs();
+        Set<String> visited = new HashSet<>();
+        Deque<String> toVisit = new ArrayDeque<>(List.of(headId));
+        while (!toVisit.isEmpty()) {
+            String id = toVisit.pop();
+            if (id.equals(ancestorId)) {
+                return true;
+            }
+            if (!visited.add(id) || boundaries.contains(id) || !has(stored(commitFile(id)), id, packs)) {
+                continue;
+            }
+            toVisit.addAll(readCommit(id).getParents());
+        }
+        return false;
+    }
+
+    /** Copies into DST every object reachable from commit HEADID of this
+     *  repository that DST lacks. Returns the number of objects copied. */
+    int transfer(Remote dst, String headId) {
+        List<PackFile> srcPacks = packs();
+        List<PackFile> dstPacks = dst.packs();
+        Set<String> boundaries = shallowBoundaries();
+
+        Map<String, Commit> newCommits = new HashMap<>();
+        Deque<String> toVisit = new ArrayDeque<>(List.of(headId));
+        while (!toVisit.isEmpty()) {
+            String id = toVisit.pop();
+            if (newCommits.containsKey(id) || has(dst.stored(dst.commitFile(id)), id, dstPacks)) {
+                continue;
+            }
+            Commit commit = readCommit(id);
+            newCommits.put(id, commit);
+            if (!boundaries.contains(id)) {
+                toVisit.addAll(commit.getParents());
+            }
+        }
+
+        Set<String> newBlobs = newCommits.values().stream()
+                .flatMap(commit -> commit.getTrackedBlobs().values().stream())
+                .filter(blobId -> !has(dst.stored(join(dst.objectsDir, blobId)), blobId, dstPacks))
+                .collect(Collectors.toSet());
+        Set<String> newChunks = newBlobs.parallelStream()
+                .flatMap(blobId -> {
+                    File blobFile = stored(join(objectsDir, blobId));
+                    copy(blobFile, join(dst.objectsDir, blobId), blobId, srcPacks);
+                    if (blobFile.isFile() && blobFile.length() >= Blob.CHUNKING_THRESHOLD) {
+                        return Stream.empty();
+                    }
+                    Blob blob = deserialize(read(blobFile, blobId, srcPacks), Blob.class);
+                    return blob.isChunked() ? blob.getChunkIds().stream() : Stream.<String>empty();
+                })
+                .filter(chunkId -> !has(dst.stored(join(dst.chunksDir, chunkId)), chunkId, dstPacks))
+                .collect(Collectors.toSet());
+        newChunks.parallelStream().forEach(chunkId ->
+                copy(stored(join(chunksDir, chunkId)), join(dst.chunksDir, chunkId), chunkId, srcPacks));
+
+        List<String> commitIds = new ArrayList<>(newCommits.keySet());
+        commitIds.sort(Comparator.comparing(id -> newCommits.get(id).getDate()));
+        for (String id : commitIds) {
+            copy(stored(commitFile(id)), dst.commitFile(id), id, srcPacks);
+        }
+        for (String id : commitIds) {
+            if (boundaries.contains(id)) {
+                for (String parentId : newCommits.get(id).getParents()) {
+                    if (!has(dst.stored(dst.commitFile(parentId)), parentId, dstPacks)) {
+                        dst.addShallowBoundary(id);
+                        break;
+                    }
+                }
+            }
+        }
+        return newCommits.size() + newBlobs.size() + newChunks.size();
+    }
+
+    private void addShallowBoundary(String commitId) {
+        Set<String> boundaries = new LinkedHashSet<>(shallowBoundaries());
+        if (boundaries.add(commitId)) {
+            writeContents(join(commonDir, SHALLOW.getName()), String.join("\n", boundaries) + "\n");
+        }
+    }
+
+    /** Hardlinks or copies the packs of this repository into DST. */
+    void copyPacks(Remote dst) {
+        for (PackFile pack : packs()) {
+            File packFile = pack.getFile();
+            copy(packFile, join(dst.objectsDir, COLD_DIR.getName(), packFile.getName()),
+                    packFile.getName(), Collections.emptyList());
+        }
+    }
+}
@@ -1,9 +1,23 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import static gitlet.Utils.*;
 import static java.lang.System.exit;
@@ -29,18 +43,91 @@ public class Repository {
      * The .gitlet directory.
      */
     public static final File GITLET_DIR = join(CWD, ".gitlet");
+    /**
+     * The .gitlet directory holding the objects and refs. It is GITLET_DIR,
+     * unless CWD is a worktree added with worktree add, whose own .gitlet
+     * only holds its HEAD, index and watcher files and names the shared
+     * one in its commondir file.
+     */
+    public static final File COMMON_DIR = commonDir(GITLET_DIR);
     /**
      * The /objects directory. stores blob files.
      */
-    public static final File OBJECTS_DIR = join(GITLET_DIR, "objects");
+    public static final File OBJECTS_DIR = join(COMMON_DIR, "objects");
+    /**
+     * chunks of large blobs, named by the hash of their content.
+     */
+    public static final File CHUNKS_DIR = join(OBJECTS_DIR, "chunks");
     /**
      * commit directory. separetely save commit files.
      */
-    public static final File COMMITS_DIR = join(GITLET_DIR, "commits");
+    public static final File COMMITS_DIR = join(COMMON_DIR, "commits");
+
+    /** The parents and changed-path filter of every commit, in bloom/xx/rest. */
+    public static final File BLOOM_DIR = join(COMMON_DIR, "bloom");
+
+    /** The pack files of archived history. */
+    public static final File COLD_DIR = join(OBJECTS_DIR, "cold");
+
+    /** The working directory tracked paths are recorded under, when it is
+     *  not CWD. */
+    public static final File KEY_ROOT = join(GITLET_DIR, "root");
+
+    /** The boundary commits of a shallow repository, one per line. */
+    public static final File SHALLOW = join(COMMON_DIR, "shallow");
+
+    /** The sparse-checkout patterns, one per line. */
+    public static final File SPARSE_CHECKOUT = join(GITLET_DIR, "info", "sparse-checkout");
+
+    /** The ignore patterns of the working directory, one per line. */
+    public static final File GITLETIGNORE = join(CWD, ".gitletignore");
+
+    /** The state of a bisection in progress in this working directory. */
+    public static final File BISECT_DIR = join(GITLET_DIR, "bisect");
+
+    /** The stash commits, newest first, one per line. */
+    public static final File STASH = join(COMMON_DIR, "stash");
+
+    /** The worktrees added to this repository, each a file holding the path
+     *  of the worktree's .gitlet directory. */
+    public static final File WORKTREES_DIR = join(COMMON_DIR, "worktrees");
+
+    /** The .gitlet directories whose objects this repository reads before
+     *  its own, one path per line. */
+    public static final File ALTERNATES = join(COMMON_DIR, "alternates");
+    /**
+     * names the hash algorithm of object ids, see HashAlgorithm.
+     */
+    public static final File OBJECT_FORMAT = join(COMMON_DIR, "objectformat");
     /**
      * staging files
      */
     public static final File INDEX = join(GITLET_DIR, "index");
+    /**
+     * index entries changed since the index file was last rewritten.
+     */
+    public static final File INDEX_JOURNAL = join(GITLET_DIR, "index.journal");
+
+    /**
+     * last known blob ids of the working files, kept while a watcher runs.
+     */
+    public static final File FSMONITOR_SNAPSHOT = join(GITLET_DIR, "fsmonitor");
+    /**
+     * xxh64 fingerprints of the working files in the snapshot.
+     */
+    public static final File FSMONITOR_FINGERPRINTS = join(GITLET_DIR, "fsmonitor-fingerprints");
+    /**
+     * working file paths changed since the snapshot, appended by the watcher.
+     */
+    public static final File FSMONITOR_JOURNAL = join(GITLET_DIR, "fsmonitor-journal");
+    /**
+     * held locked by a running watcher.
+     */
+    public static final File FSMONITOR_LOCK = join(GITLET_DIR, "fsmonitor.lock");
+    /**
+     * cookie files a command creates and waits for the watcher to journal.
+     */
+    public static final File FSMONITOR_COOKIES = join(GITLET_DIR, "fsmonitor-cookies");
 
     /**
      * points to the branch that is currently checked out (the "HEAD" of the repository).
@@ -51,7 +138,7 @@ public class Repository {
     /**
      * contains references to commit objects
      */
-    public static final File REFS_DIR = join(GITLET_DIR, "refs");
+    public static final File REFS_DIR = join(COMMON_DIR, "refs");
 
     /**
      * contains reference files to branch heads each named as the branch name.
@@ -59,9 +146,36 @@ public class Repository {
      */
     public static final File BRANCH_HEADS_DIR = join(REFS_DIR, "heads");
 
+    /** The remotes, each a file holding the path of the remote's .gitlet directory. */
+    public static final File REMOTES_DIR = join(COMMON_DIR, "remotes");
+
+    /** The branch heads of each remote as of the last fetch or push, in
+     *  refs/remotes/[remote name]/[branch name]. */
+    public static final File REMOTE_REFS_DIR = join(REFS_DIR, "remotes");
+
+    /** Refs moved out of their loose files, one "id name" line each. */
+    public static final File PACKED_REFS = join(COMMON_DIR, "packed-refs");
+
+    /** The annotated tag objects. */
+    public static final File TAG_OBJECTS_DIR = join(OBJECTS_DIR, "tags");
+
     public static final File[] CWD_FILES = CWD.listFiles(File::isFile);
 
+    /** Returns the .gitlet directory holding the objects and refs of the
+     *  repository or worktree whose .gitlet directory is GITLETDIR. */
+    static File commonDir(File gitletDir) {
+        File commonDirFile = join(gitletDir, "commondir");
+        if (!commonDirFile.isFile()) {
+            return gitletDir;
+        }
+        return new File(readContentsAsString(commonDirFile).trim());
+    }
+
     public static void init() {
+        init(HashAlgorithm.SHA1);
+    }
+
+    public static void init(HashAlgorithm objectFormat) {
         if (GITLET_DIR.exists()) {
             System.out.println("A Gitlet version-control system already exists in the current directory.");
             exit(0);
@@ -71,50 +185,175 @@ public class Repository {
             COMMITS_DIR.mkdir();
             REFS_DIR.mkdir();
             BRANCH_HEADS_DIR.mkdir();
+            HashAlgorithm.record(objectFormat);
             setCurrentBranch(DEFAULT_BRANCH_NAME);
             createInitialCommit();
         }
     }
 
     private static void setCurrentBranch(String branchName) {
-        writeContents(HEAD, HEAD_BRANCH_REF_PATH + branchName);
+        Refs.snapshot().setCurrentBranch(branchName);
     }
 
-    private static void updateBranchHead(String commitId) {
-        writeContents(getCurrBranchHeadRefFile(), commitId);
+    static void updateBranchHead(String commitId) {
+        Refs.snapshot().update(Refs.HEADS + getCurrBranchName(), commitId);
     }
 
     public static void createInitialCommit() {
         Commit initialCommit = new Commit();
-        initialCommit.create(); // add a commit file to objects directry
-        File masterFile = join(BRANCH_HEADS_DIR, DEFAULT_BRANCH_NAME);
-        writeContents(masterFile, initialCommit.getId()); // add a 'master' reference file to refs/heads directory
+        initialCommit.create(); // add a commit file to objects directry and a 'master' ref
     }
 
 
     public static void add(String filename) {
-        File fileToAdd = join(CWD, filename);
-        if (!fileToAdd.exists()) {
-            System.out.println("File does not exist.");
-            exit(0);
-        }
+        add(List.of(filename));
+    }
 
-        if (!INDEX.exists()) {
-            Index newStagingFile = new Index();
-            newStagingFile.add(fileToAdd);
-            newStagingFile.save();
-            return;
+    /** Stages every file named by PATHSPECS: file names, directories
+     *  (their files), and globs over the files of the working directory.
+     *  The index and the head commit are loaded once and the index is
+     *  saved once. Files whose stat data is unchanged since they were
+     *  staged are skipped; the others are read and hashed in parallel,
+     *  once each, and a changed file's blob is written right away from
+     *  the bytes that were hashed, so only blob ids are kept. */
+    public static void add(List<String> pathspecs) {
+        List<File> filesToAdd = new ArrayList<>();
+        for (String pathspec : pathspecs) {
+            List<File> matched = expandPathspec(pathspec);
+            if (matched.isEmpty() && Ignore.isIgnored(join(CWD, pathspec))) {
+                System.out.println("File is ignored.");
+                exit(0);
+            } else if (matched.isEmpty()) {
+                System.out.println("File does not exist.");
+                exit(0);
+            }
+            filesToAdd.addAll(matched);
         }
-        Index stagingFile = Index.fromFile();
+        Index stagingArea = INDEX.exists() ? Index.fromFile() : new Index();
         Commit head = getCurrentBranchHeadCommit();
-        if (head.hasIdentical(fileToAdd)) {
-            stagingFile.unstage(fileToAdd.getPath());
-            stagingFile.unremove(fileToAdd.getPath());
-            stagingFile.save();
-            return;
+        Map<String, String> blobIds = new ConcurrentHashMap<>();
+        filesToAdd.parallelStream()
+                .distinct()
+                .filter(file -> !stagingArea.isStatClean(file))
+                .forEach(file -> {
+                    String filePath = WorkingTree.key(file);
+                    Blob blob = new Blob(file);
+                    String blobId = blob.getId();
+                    if (!blobId.equals(head.getBlobId(filePath))
+                            && !blobId.equals(stagingArea.findBlobId(filePath))
+                            && !join(OBJECTS_DIR, blobId).exists()) {
+                        blob.create();
+                    }
+                    blobIds.put(filePath, blobId);
+                });
+        stage(stagingArea, head, blobIds, true, Collections.emptySet());
+    }
+
+    /** Stages every file of the working directory and the removal of
+     *  every tracked file that no longer exists. */
+    public static void addAll() {
+        Map<String, String> blobIds = WorkingTree.files();
+        Set<String> deleted = new HashSet<>();
+        Index stagingArea = INDEX.exists() ? Index.fromFile() : new Index();
+        Commit head = getCurrentBranchHeadCommit();
+        for (String stagedPath : stagingArea.getStaged().keySet()) {
+            if (!blobIds.containsKey(stagedPath) && SparseCheckout.includes(stagedPath)) {
+                deleted.add(stagedPath);
+            }
+        }
+        for (String trackedPath : head.getTrackedBlobs().keySet()) {
+            if (!blobIds.containsKey(trackedPath) && SparseCheckout.includes(trackedPath)) {
+                deleted.add(trackedPath);
+            }
         }
-        stagingFile.add(fileToAdd);
-        stagingFile.save();
+        stage(stagingArea, head, blobIds, false, deleted);
+    }
+
+    /** Stages in STAGINGAREA the files whose paths map to blob ids in
+     *  BLOBIDS, and the removal of the paths in DELETED, against the head
+     *  commit HEAD, and saves the index once. If WRITTEN, the blobs of
+     *  BLOBIDS are already stored; otherwise the changed files are read
+     *  and their blobs written here, and every file is staged with the id
+     *  of the blob actually written for it. */
+    private static void stage(Index stagingArea, Commit head, Map<String, String> blobIds,
+                              boolean written, Set<String> deleted) {
+        List<String> changedPaths = new ArrayList<>();
+        for (Map.Entry<String, String> entry : blobIds.entrySet()) {
+            String filePath = entry.getKey();
+            if (entry.getValue().equals(head.getBlobId(filePath))) {
+                stagingArea.unstage(filePath);
+                stagingArea.unremove(filePath);
+            } else if (!entry.getValue().equals(stagingArea.findBlobId(filePath))) {
+                changedPaths.add(filePath);
+            }
+        }
+        Map<String, String> stagedIds = written ? blobIds : writeBlobs(changedPaths);
+        for (String filePath : changedPaths) {
+            stagingArea.add(WorkingTree.file(filePath), stagedIds.get(filePath));
+        }
+        for (String filePath : deleted) {
+            if (head.isTracked(filePath)) {
+                stagingArea.remove(filePath);
+            } else {
+                stagingArea.unstage(filePath);
+            }
+        }
+        stagingArea.save();
+    }
+
+    /** Reads the working files at FILEPATHS in parallel, writes their
+     *  blobs that are not stored yet and returns the id of each. */
+    private static Map<String, String> writeBlobs(List<String> filePaths) {
+        Map<String, String> blobIds = new ConcurrentHashMap<>();
+        filePaths.parallelStream().forEach(filePath -> {
+            Blob blob = new Blob(WorkingTree.file(filePath));
+            if (!join(OBJECTS_DIR, blob.getId()).exists()) {
+                blob.create();
+            }
+            blobIds.put(filePath, blob.getId());
+        });
+        return blobIds;
+    }
+
+    /** Returns the files named by PATHSPEC: the file itself, the files of
+     *  a directory, or the working files matching a glob. */
+    private static List<File> expandPathspec(String pathspec) {
+        File file = join(CWD, pathspec);
+        if (file.isFile()) {
+            return List.of(file);
+        }
+        Set<String> tracked = Ignore.rules().isEmpty() ? Set.of() : trackedPaths();
+        if (file.isDirectory()) {
+            if (Ignore.isIgnored(file)) {
+                return List.of();
+            }
+            return Arrays.asList(file.listFiles(child -> child.isFile()
+                    && (!Ignore.isIgnored(child) || tracked.contains(WorkingTree.key(child)))));
+        }
+        List<File> matched = matchGlob(pathspec, plainFilenamesIn(CWD));
+        matched.removeIf(child -> Ignore.isIgnored(child) && !tracked.contains(WorkingTree.key(child)));
+        return matched;
+    }
+
+    /** Returns the files of the working directory whose names, taken from
+     *  CANDIDATES, match the glob PATHSPEC. */
+    private static List<File> matchGlob(String pathspec, Collection<String> candidates) {
+        List<File> matched = new ArrayList<>();
+        if (!isGlob(pathspec)) {
+            return matched;
+        }
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pathspec);
+        for (String name : new TreeSet<>(candidates)) {
+            if (matcher.matches(Paths.get(name))) {
+                matched.add(join(CWD, name));
+            }
+        }
+        return matched;
+    }
+
+    private static boolean isGlob(String pathspec) {
+        return pathspec.indexOf('*') >= 0 || pathspec.indexOf('?') >= 0
+                || pathspec.indexOf('[') >= 0 || pathspec.indexOf('{') >= 0;
     }
 
     public static void commit(String message) {
@@ -136,30 +375,46 @@ public class Repository {
     }
 
     public static void rm(String filename) {
-        Commit currCommit = getCurrentBranchHeadCommit();
-        Index stagedFile = Index.fromFile();
-        File fileToRemove = join(CWD, filename);
-        String filePath = fileToRemove.getPath();
+        rm(List.of(filename));
+    }
 
-        if (stagedFile == null || !stagedFile.isStaged(fileToRemove)) {
-            if (currCommit.isTracked(filePath)) {
-                stagedFile.remove(filePath);
-                stagedFile.save();
-                fileToRemove.delete();
-            } else {
-                System.out.println("No reason to remove the file.");
-                exit(0);
+    /** Removes every file named by PATHSPECS, which may be file names or
+     *  globs over the tracked, staged and working files. Nothing is
+     *  removed unless every file has a reason to be. */
+    public static void rm(List<String> pathspecs) {
+        Commit currCommit = getCurrentBranchHeadCommit();
+        Index stagedFile = INDEX.exists() ? Index.fromFile() : new Index();
+        Set<String> candidates = new HashSet<>(plainFilenamesIn(CWD));
+        for (String path : currCommit.getTrackedBlobs().keySet()) {
+            candidates.add(new File(path).getName());
+        }
+        for (String path : stagedFile.getStaged().keySet()) {
+            candidates.add(new File(path).getName());
+        }
+        List<File> filesToRemove = new ArrayList<>();
+        for (String pathspec : pathspecs) {
+            List<File> matched = matchGlob(pathspec, candidates);
+            if (matched.isEmpty()) {
+                matched = List.of(join(CWD, pathspec));
             }
-        } else {
+            for (File fileToRemove : matched) {
+                if (!stagedFile.isStaged(fileToRemove) && !currCommit.isTracked(WorkingTree.key(fileToRemove))) {
+                    System.out.println("No reason to remove the file.");
+                    exit(0);
+                }
+                filesToRemove.add(fileToRemove);
+            }
+        }
+        for (File fileToRemove : filesToRemove) {
+            String filePath = WorkingTree.key(fileToRemove);
             if (currCommit.isTracked(filePath)) {
                 stagedFile.remove(filePath);
-                stagedFile.save();
                 fileToRemove.delete();
             } else {
                 stagedFile.unstage(filePath);
-                stagedFile.save();
             }
         }
+        stagedFile.save();
     }
 
     public static void log() {
@@ -167,7 +422,7 @@ public class Repository {
         StringBuilder logBuilder = new StringBuilder();
         while (true) {
             logBuilder.append(currCommit.getLog()).append("\n");
-            List<String> parentCommitIDs = currCommit.getParents();
+            List<String> parentCommitIDs = Shallow.parentsOf(currCommit);
             if (parentCommitIDs.size() == 0) { break; }
             String nextCommitId = parentCommitIDs.get(0);
             currCommit = Commit.find(nextCommitId);
@@ -175,6 +430,30 @@ public class Repository {
         System.out.println(logBuilder);
     }
 
+    /** Prints the log entries of the commits that changed FILENAME. Only
+     *  the commits whose changed-path filter admits the file are read. */
+    public static void log(String fileName) {
+        String path = WorkingTree.key(join(CWD, fileName));
+        String commitId = getCurrBranchHeadCommitId();
+        StringBuilder logBuilder = new StringBuilder();
+        while (commitId != null) {
+            ChangedPathFilter filter = ChangedPathFilter.of(commitId);
+            List<String> parentCommitIDs = Shallow.isBoundary(commitId)
+                    ? List.of() : filter.getParents();
+            String nextCommitId = parentCommitIDs.isEmpty() ? null : parentCommitIDs.get(0);
+            if (filter.mightHaveChanged(path)) {
+                Commit commit = Commit.find(commitId);
+                String parentBlobId = nextCommitId == null
+                        ? null : Commit.find(nextCommitId).getBlobId(path);
+                if (!Objects.equals(commit.getBlobId(path), parentBlobId)) {
+                    logBuilder.append(commit.getLog()).append("\n");
+                }
+            }
+            commitId = nextCommitId;
+        }
+        System.out.println(logBuilder);
+    }
+
     public static void globalLog() {
         List<String> commits = plainFilenamesIn(COMMITS_DIR);
         StringBuilder logBuilder = new StringBuilder();
@@ -208,16 +487,27 @@ public class Repository {
 
     public static void status() {
         StringBuilder statusLog = new StringBuilder("=== Branches ===\n");
-        List<String> branchLists = plainFilenamesIn(BRANCH_HEADS_DIR);
-        for (String branchName: branchLists) {
-            if (isCurrBranch(branchName)) { statusLog.append("*"); }
+        Refs refs = Refs.snapshot();
+        String currBranchName = refs.currentBranch();
+        for (String branchName: refs.withPrefix(Refs.HEADS).keySet()) {
+            if (branchName.equals(currBranchName)) { statusLog.append("*"); }
             statusLog.append(branchName + "\n");
         }
         if (!INDEX.exists()) { // gitlet not in initialised state
             statusNullIndex(statusLog);
             return;
         }
-        List<String> cwdFileList = plainFilenamesIn(CWD);
+        Map<String, String> watchedFiles = WorkingTree.watchedFiles();
+        List<String> cwdFileList;
+        if (watchedFiles == null) {
+            cwdFileList = plainFilenamesIn(CWD);
+        } else {
+            cwdFileList = new ArrayList<>();
+            for (String path : watchedFiles.keySet()) {
+                cwdFileList.add(new File(path).getName());
+            }
+            Collections.sort(cwdFileList);
+        }
         Index stagingFiles = Index.fromFile();
         Map<String, String> stageMap = stagingFiles.getStaged();
         StringBuilder stagedButDeleted = new StringBuilder();
@@ -225,12 +515,16 @@ public class Repository {
 
         statusLog.append("\n=== Staged Files === \n");
         for (String stagedPath: stageMap.keySet()) {
-            File cwdFile = new File(stagedPath);
-            String cwdHash = sha1(cwdFile.getPath(), readContents(cwdFile));
+            File cwdFile = WorkingTree.file(stagedPath);
             String stagedFileName = Paths.get(stagedPath).getFileName().toString();
-            if (!cwdFile.exists()) {
+            boolean exists = watchedFiles == null ? cwdFile.exists() : watchedFiles.containsKey(stagedPath);
+            if (!exists && !SparseCheckout.includes(stagedPath)) {
+                statusLog.append(stagedFileName + "\n");
+            } else if (!exists) {
                 stagedButDeleted.append(stagedFileName + " (deleted)\n");
-            } else if (!cwdHash.equals(stageMap.get(stagedPath))) {
+            } else if (!stagingFiles.isStatClean(cwdFile)
+                    && !stageMap.get(stagedPath).equals(watchedFiles == null
+                    ? hash(stagedPath, cwdFile) : watchedFiles.get(stagedPath))) {
                 stagedButModded.append(stagedFileName + " (modified)\n");
             } else {
                 statusLog.append(stagedFileName + "\n");
@@ -247,9 +541,11 @@ public class Repository {
         statusLog.append("\n=== Modifications Not Staged For Commit ===\n"
                 + stagedButDeleted + stagedButModded
                 + "\n=== Untracked Files ===\n");
+        Map<String, String> trackedFiles = stagingFiles.getTracked();
         for (String untrackedFileName: cwdFileList) {
-            String untrackedFilePath = join(CWD, untrackedFileName).getPath();
-            if (stagingFiles.getTracked().containsKey(untrackedFilePath)) { continue; }
+            String untrackedFilePath = WorkingTree.key(join(CWD, untrackedFileName));
+            if (trackedFiles.containsKey(untrackedFilePath)) { continue; }
+            if (Ignore.isIgnored(join(CWD, untrackedFileName))) { continue; }
             statusLog.append(untrackedFileName + "\n");
         }
         statusLog.append("\n");
@@ -273,41 +569,36 @@ public class Repository {
         return Commit.find(commitId);
     }
 
-    public static File getCurrBranchHeadRefFile() {
-        String currentBranchName = getCurrBranchName();
-        return join(BRANCH_HEADS_DIR, currentBranchName);
+    /** Returns the paths tracked by the head commit or staged, which are
+     *  never ignored. */
+    static Set<String> trackedPaths() {
+        Set<String> tracked = new HashSet<>(getCurrentBranchHeadCommit().getTrackedBlobs().keySet());
+        if (INDEX.exists()) {
+            tracked.addAll(Index.fromFile().getStaged().keySet());
+        }
+        return tracked;
     }
 
     private static String getCurrBranchName() {
-        String headRef = readContentsAsString(HEAD);
-        return headRef.replace(HEAD_BRANCH_REF_PATH, "");
+        return Refs.snapshot().currentBranch();
     }
 
     public static String getCurrBranchHeadCommitId() {
-        File refFile = getCurrBranchHeadRefFile();
-        return readContentsAsString(refFile);
+        return Refs.snapshot().headCommitId();
     }
 
     private static Map<String, String> getCurrentFilesMap() {
-        Map<String, String> filesMap = new HashMap<>();
-        for (File file : CWD_FILES) {
-            String filePath = file.getPath();
-            String blobId = Blob.generateId(file);
-            filesMap.put(filePath, blobId);
-        }
-        return filesMap;
+        return WorkingTree.files();
     }
 
     public static void checkout(Commit targetCommit, String fileName) {
         File file = join(CWD, fileName);
-        String targetCommitBlobId = targetCommit.getBlobId(file.getPath());
+        String targetCommitBlobId = targetCommit.getBlobId(WorkingTree.key(file));
         if (targetCommitBlobId == null) {
             System.out.println("File does not exist in that commit.");
             exit(0);
         }
-        byte[] blobContent = Blob.fromFile(targetCommitBlobId).getContent();
-        File fileToOverwrite = file;
-        writeContents(fileToOverwrite, blobContent);
+        Blob.fromFile(targetCommitBlobId).writeTo(file);
     }
 
     public static void checkoutFile(String fileName) {
@@ -322,9 +613,13 @@ public class Repository {
     }
 
     private static String getFullCommitId(String commitId) {
-        if (commitId.length() == 40) {
+        if (commitId.length() == uidLength()) {
             return commitId;
         }
+        String taggedId = Refs.snapshot().peel(Refs.TAGS + commitId);
+        if (taggedId != null) {
+            return taggedId;
+        }
         if (commitId.length() < 4) {
             System.out.println("Commit id should contain at least 4 characters.");
             System.exit(0);
@@ -332,8 +627,7 @@ public class Repository {
         String commitSubDirName = commitId.substring(0, 2);
         File commitSubDir = join(COMMITS_DIR, commitSubDirName);
         if (!commitSubDir.exists()) {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
+            return getFullArchivedCommitId(commitId);
         }
         boolean isFound = false;
         String commitFileNamePrefix = commitId.substring(2);
@@ -348,15 +642,32 @@ public class Repository {
             }
         }
         if (!isFound) {
+            return getFullArchivedCommitId(commitId);
+        }
+        return commitId;
+    }
+
+    /** looks an abbreviated id up among the commits in the cold store. */
+    private static String getFullArchivedCommitId(String commitId) {
+        String fullId = null;
+        for (String archivedId: ColdStore.commitIds()) {
+            if (archivedId.startsWith(commitId)) {
+                if (fullId != null) {
+                    System.out.println("More than one commit has the same id prefix.");
+                }
+                fullId = archivedId;
+            }
+        }
+        if (fullId == null) {
             System.out.println("No commit with that id exists.");
             System.exit(0);
         }
-        return commitId;
+        return fullId;
     }
 
     public static void checkoutBranch(String branchName) {
-        File branchHead = join(BRANCH_HEADS_DIR, branchName);
-        if (!branchHead.exists()) {
+        String branchHeadId = Refs.snapshot().get(Refs.HEADS + branchName);
+        if (branchHeadId == null) {
             System.out.println("No such branch exists.");
             exit(0);
         }
@@ -364,7 +675,7 @@ public class Repository {
             System.out.println("No need to checkout the current branch.");
             exit(0);
         }
-        String branchHeadId = readContentsAsString(branchHead);
+        exitIfCheckedOut(branchName);
         Commit headCommit = Commit.find(branchHeadId);
         checkoutAll(headCommit);
         setCurrentBranch(branchName);
@@ -375,20 +686,27 @@ public class Repository {
            Here the untracked files need to be deleted.
            firstly, change file[] to a list of file paths and create untracked file list.t,l
          */
-        List<String> untracked = new ArrayList<>();
+        Set<String> untracked = new HashSet<>();
+        Set<String> headPaths = Ignore.rules().isEmpty() ? Set.of() : trackedPaths();
         for (File file: CWD_FILES) {
-            untracked.add(file.getPath());
+            String key = WorkingTree.key(file);
+            if (!Ignore.isIgnored(file) || headPaths.contains(key)) {
+                untracked.add(key);
+            }
         }
         Map<String, String> tracked = targetCommit.getTrackedBlobs();
+        checkUntracked(targetCommit);
         for (String filePath: tracked.keySet()) {
-            File file = new File(filePath);
+            if (!SparseCheckout.includes(filePath)) {
+                continue;
+            }
+            File file = WorkingTree.file(filePath);
             untracked.remove(filePath);
             String fileName = file.getName();
-            checkUntracked(targetCommit);
             checkout(targetCommit, fileName);
         }
         for (String fileToDeletePath: untracked) {
-            File fileToDelete = new File(fileToDeletePath);
+            File fileToDelete = WorkingTree.file(fileToDeletePath);
             fileToDelete.delete();
         }
     }
@@ -396,8 +714,9 @@ public class Repository {
     private static void checkUntracked(Commit targetCommit) {
         Map<String, String> currentFilesMap = getCurrentFilesMap();
         Map<String, String> trackedFilesMap = getCurrentBranchHeadCommit().getTrackedBlobs();
-        Map<String, String> addedFilesMap = Index.fromFile().getStaged();
-        Set<String> removedFilePathsSet = Index.fromFile().getRmStaged();
+        Index stagingArea = INDEX.exists() ? Index.fromFile() : new Index();
+        Map<String, String> addedFilesMap = stagingArea.getStaged();
+        Set<String> removedFilePathsSet = stagingArea.getRmStaged();
 
         List<String> untrackedFilePaths = new ArrayList<>();
 
@@ -426,50 +745,536 @@ public class Repository {
     }
 
     public static void reset(String commitId) {
+        commitId = getFullCommitId(commitId);
         Commit targetCommit = Commit.find(commitId);
         checkoutAll(targetCommit);
-        targetCommit.removeTracked();
         Index stagingArea = Index.fromFile();
         stagingArea.clear();
         updateBranchHead(commitId);
     }
 
     public static void branch(String branchName) {
-        File newBranchFile = join(BRANCH_HEADS_DIR, branchName);
-        validateBranch(newBranchFile);
-        String commitId = getCurrBranchHeadCommitId();
-        writeContents(newBranchFile, commitId);
+        Refs refs = Refs.snapshot();
+        if (refs.get(Refs.HEADS + branchName) != null) {
+            System.out.println("A branch with that name already exists.");
+            exit(0);
+        }
+        exitIfInvalidRefName(refs, Refs.HEADS, branchName, "branch");
+        refs.update(Refs.HEADS + branchName, refs.headCommitId());
+    }
+
+    /** Exits with a message unless NAME can name a new KIND, a branch or
+     *  a tag, whose refs start with PREFIX. */
+    private static void exitIfInvalidRefName(Refs refs, String prefix, String name, String kind) {
+        if (!Refs.isValidName(name)) {
+            System.out.println("Invalid " + kind + " name.");
+            exit(0);
+        }
+        if (refs.conflicts(prefix + name)) {
+            System.out.println("A " + kind + " with a conflicting name already exists.");
+            exit(0);
+        }
     }
 
     public static void rmBranch(String branchName) {
-        File branchToRm = join(BRANCH_HEADS_DIR, branchName);
-        exitIfNotExists(branchToRm);
+        getBranchHeadCommitId(branchName);
         if (isCurrBranch(branchName)) {
             System.out.println("Cannot remove the current branch.");
             exit(0);
         }
-        branchToRm.delete();
+        exitIfCheckedOut(branchName);
+        Refs.snapshot().delete(Refs.HEADS + branchName);
     }
 
-    private static void validateBranch(File branchFile) {
-        if (branchFile.exists()) {
-            System.out.println("A branch with that name already exists.");
+    /** returns the head of a branch, or of a remote-tracking branch such as origin/master. */
+    private static String getBranchHeadCommitId(String branchName) {
+        Refs refs = Refs.snapshot();
+        String commitId = refs.get(Refs.HEADS + branchName);
+        if (commitId == null) {
+            commitId = refs.get(Refs.REMOTES + branchName);
+        }
+        if (commitId == null) {
+            System.out.println("A branch with that name does not exist.");
+            System.exit(0);
+        }
+        return commitId;
+    }
+
+    /** Lists the tags. */
+    public static void tag() {
+        StringBuilder sb = new StringBuilder();
+        for (String tagName: Refs.snapshot().withPrefix(Refs.TAGS).keySet()) {
+            sb.append(tagName).append("\n");
+        }
+        System.out.print(sb);
+    }
+
+    /** Tags COMMITID, or the head commit if it is null, as TAGNAME. The tag
+     *  is annotated with MESSAGE unless it is null. */
+    public static void tag(String tagName, String commitId, String message) {
+        Refs refs = Refs.snapshot();
+        if (refs.get(Refs.TAGS + tagName) != null) {
+            System.out.println("A tag with that name already exists.");
             exit(0);
         }
+        exitIfInvalidRefName(refs, Refs.TAGS, tagName, "tag");
+        String targetId = commitId == null ? refs.headCommitId() : getFullCommitId(commitId);
+        Commit.find(targetId);
+        if (message == null) {
+            refs.update(Refs.TAGS + tagName, targetId);
+        } else {
+            Tag tag = new Tag(tagName, targetId, message);
+            tag.create();
+            refs.update(Refs.TAGS + tagName, tag.getId());
+        }
     }
 
-    private static void exitIfNotExists(File branchFile) {
-        if (!branchFile.exists()) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+    public static void rmTag(String tagName) {
+        Refs refs = Refs.snapshot();
+        if (refs.get(Refs.TAGS + tagName) == null) {
+            System.out.println("A tag with that name does not exist.");
+            exit(0);
+        }
+        refs.delete(Refs.TAGS + tagName);
+    }
+
+    /** Prints every ref as "id name", with annotated tags peeled. */
+    public static void showRef() {
+        Refs refs = Refs.snapshot();
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> ref: refs.all().entrySet()) {
+            sb.append(ref.getValue()).append(' ').append(ref.getKey()).append("\n");
+            String commitId = refs.peel(ref.getKey());
+            if (!commitId.equals(ref.getValue())) {
+                sb.append(commitId).append(' ').append(ref.getKey()).append("^{}\n");
+            }
+        }
+        System.out.print(sb);
+    }
+
+    public static void packRefs() {
+        Refs.snapshot().pack();
+    }
+
+    public static void gc() {
+        new GarbageCollector(GarbageCollector.DEFAULT_GRACE_MILLIS).run();
+    }
+
+    /** Prunes unreachable objects older than GRACESECONDS. */
+    public static void prune(long graceSeconds) {
+        new GarbageCollector(graceSeconds * 1000).run();
+    }
+
+    /** Makes COMMITID the shallow boundary and moves the history behind it
+     *  that no branch or staged file still needs into a pack in the cold
+     *  store. */
+    public static void archiveHistory(String commitId) {
+        Commit boundary = Commit.find(getFullCommitId(commitId));
+        if (Shallow.parentsOf(boundary).isEmpty()) {
+            System.out.println("No history behind that commit.");
+            exit(0);
+        }
+        Shallow.add(boundary.getId());
+        GarbageCollector live = new GarbageCollector(0);
+        live.mark();
+
+        List<String> commits = new ArrayList<>();
+        Set<String> blobs = new TreeSet<>();
+        Set<String> visited = new HashSet<>();
+        Deque<String> toVisit = new ArrayDeque<>(boundary.getParents());
+        while (!toVisit.isEmpty()) {
+            String id = toVisit.pop();
+            File commitFile = join(COMMITS_DIR, id.substring(0, 2), id.substring(2));
+            if (!visited.add(id) || live.isReachableCommit(id) || !commitFile.isFile()) {
+                continue;
+            }
+            Commit commit = Commit.find(id);
+            commits.add(id);
+            for (String blobId: commit.getTrackedBlobs().values()) {
+                if (!live.isReachableBlob(blobId) && join(OBJECTS_DIR, blobId).isFile()) {
+                    blobs.add(blobId);
+                }
+            }
+            toVisit.addAll(Shallow.parentsOf(commit));
         }
+        Set<String> chunks = new TreeSet<>();
+        for (String blobId: blobs) {
+            Blob blob = Blob.fromFile(blobId);
+            if (blob.isChunked()) {
+                for (String chunkId: blob.getChunkIds()) {
+                    if (!live.isReachableChunk(chunkId) && join(CHUNKS_DIR, chunkId).isFile()) {
+                        chunks.add(chunkId);
+                    }
+                }
+            }
+        }
+        ColdStore.archive(commits, new ArrayList<>(blobs), new ArrayList<>(chunks));
+        message("Archived %d commits, %d blobs and %d chunks.",
+                commits.size(), blobs.size(), chunks.size());
+    }
+
+    /** Removes the shallow boundaries; archived history is read back from
+     *  the cold store when it is reached. */
+    public static void unshallow() {
+        Shallow.clear();
+    }
+
+    /** Prints the lines matching REGEX in the files of the head commit, or
+     *  of every commit in COMMITIDS, prefixed by the commit as given. */
+    public static void grep(String regex, List<String> commitIds) {
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(regex);
+        } catch (PatternSyntaxException excp) {
+            System.out.println("Invalid regular expression.");
+            exit(0);
+            return;
+        }
+        TreeSearch search = new TreeSearch(pattern);
+        if (commitIds.isEmpty()) {
+            search.search(Commit.find(getCurrBranchHeadCommitId()), "");
+        }
+        for (String commitId : commitIds) {
+            search.search(Commit.find(getFullCommitId(commitId)), commitId + ":");
+        }
+    }
+
+    /** Prints the objects named by the ids on standard input, or only their
+     *  header lines if HEADERSONLY. */
+    public static void catFile(boolean headersOnly) {
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(FileDescriptor.out));
+        try {
+            new CatFile(out, headersOnly).batch(in);
+        } catch (IOException excp) {
+            throw error("Could not copy objects: %s", excp.getMessage());
+        }
+    }
+
+    /** Prints the ids of the commits reachable from REVS but from none of
+     *  the revisions in REVS that start with ^, newest first. The revisions
+     *  on standard input, one per line, follow REVS if STDIN. */
+    public static void revList(List<String> revs, boolean stdin) {
+        List<String> allRevs = new ArrayList<>(revs);
+        if (stdin) {
+            try {
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(System.in, StandardCharsets.UTF_8));
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (!line.trim().isEmpty()) {
+                        allRevs.add(line.trim());
+                    }
+                }
+            } catch (IOException excp) {
+                throw error("Could not read revisions: %s", excp.getMessage());
+            }
+        }
+        Set<String> excluded = new HashSet<>();
+        PriorityQueue<Commit> toVisit = new PriorityQueue<>(
+                Comparator.comparing(Commit::getDate).reversed().thenComparing(Commit::getId));
+        Set<String> queued = new HashSet<>();
+        for (String rev : allRevs) {
+            if (rev.startsWith("^")) {
+                excluded.addAll(ancestorsOf(Commit.find(resolveRevision(rev.substring(1)))));
+            } else {
+                String commitId = resolveRevision(rev);
+                if (queued.add(commitId)) {
+                    toVisit.add(Commit.find(commitId));
+                }
+            }
+        }
+        PrintStream out = new PrintStream(new BufferedOutputStream(
+                new FileOutputStream(FileDescriptor.out)), false);
+        while (!toVisit.isEmpty()) {
+            Commit commit = toVisit.poll();
+            if (excluded.contains(commit.getId())) {
+                continue;
+            }
+            out.println(commit.getId());
+            for (String parentId : Shallow.parentsOf(commit)) {
+                if (!excluded.contains(parentId) && queued.add(parentId)) {
+                    toVisit.add(Commit.find(parentId));
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /** Returns the commit id named by REV: HEAD, a branch, a remote-tracking
+     *  branch, a tag or a commit id. */
+    private static String resolveRevision(String rev) {
+        Refs refs = Refs.snapshot();
+        if (rev.equals("HEAD")) {
+            return refs.headCommitId();
+        }
+        String commitId = refs.get(Refs.HEADS + rev);
+        if (commitId == null) {
+            commitId = refs.get(Refs.REMOTES + rev);
+        }
+        return commitId != null ? commitId : getFullCommitId(rev);
+    }
+
+    /** Writes the tree of COMMITID as an archive in FORMAT, tar or zip, to
+     *  the file OUTPUT, or to standard output if OUTPUT is null. */
+    public static void archive(String commitId, String format, String output) {
+        if (!format.equals(TreeArchive.TAR) && !format.equals(TreeArchive.ZIP)) {
+            System.out.println("Unknown archive format.");
+            exit(0);
+        }
+        Commit commit = Commit.find(getFullCommitId(commitId));
+        try (OutputStream out = output == null
+                ? new BufferedOutputStream(new FileOutputStream(FileDescriptor.out))
+                : new BufferedOutputStream(new FileOutputStream(output))) {
+            TreeArchive.write(commit, format, out);
+        } catch (IOException excp) {
+            throw error("Could not write archive: %s", excp.getMessage());
+        }
+    }
+
+    /** Prints every line of FILENAME as of the head commit with the commit
+     *  that last changed it. */
+    public static void blame(String fileName) {
+        Commit head = getCurrentBranchHeadCommit();
+        String path = WorkingTree.key(join(CWD, fileName));
+        if (head.getBlobId(path) == null) {
+            System.out.println("File does not exist in that commit.");
+            exit(0);
+        }
+        new Blame(path, head).print();
+    }
+
+    /** Verifies the repository and exits with 1 if it is corrupt. */
+    public static void fsck() {
+        exit(new Fsck().run());
+    }
+
+    public static void addRemote(String remoteName, String remotePath) {
+        File remoteFile = join(REMOTES_DIR, remoteName);
+        if (remoteFile.exists()) {
+            System.out.println("A remote with that name already exists.");
+            exit(0);
+        }
+        REMOTES_DIR.mkdir();
+        writeContents(remoteFile, remotePath);
+    }
+
+    public static void rmRemote(String remoteName) {
+        File remoteFile = join(REMOTES_DIR, remoteName);
+        if (!remoteFile.exists()) {
+            System.out.println("A remote with that name does not exist.");
+            exit(0);
+        }
+        remoteFile.delete();
+    }
+
+    /** Copies the history of BRANCHNAME of the remote that is missing here
+     *  and points refs/remotes/REMOTENAME/BRANCHNAME at its head. */
+    public static void fetch(String remoteName, String branchName) {
+        Remote remote = Remote.named(remoteName);
+        remote.exitIfIncompatible(Remote.local());
+        String remoteHeadId = remote.branchHead(branchName);
+        if (remoteHeadId == null) {
+            System.out.println("That remote does not have that branch.");
+            exit(0);
+        }
+        remote.transfer(Remote.local(), remoteHeadId);
+        updateRemoteRef(remoteName, branchName, remoteHeadId);
+    }
+
+    public static void pull(String remoteName, String branchName) {
+        fetch(remoteName, branchName);
+        merge(remoteName + "/" + branchName);
+    }
+
+    /** Copies the history of the current branch that the remote is missing
+     *  and fast-forwards BRANCHNAME of the remote to it. */
+    public static void push(String remoteName, String branchName) {
+        Remote remote = Remote.named(remoteName);
+        Remote local = Remote.local();
+        local.exitIfIncompatible(remote);
+        String headId = getCurrBranchHeadCommitId();
+        String remoteHeadId = remote.branchHead(branchName);
+        if (remoteHeadId != null && !local.isAncestor(remoteHeadId, headId)) {
+            System.out.println("Please pull down remote changes before pushing.");
+            exit(0);
+        }
+        local.transfer(remote, headId);
+        remote.setBranchHead(branchName, headId);
+        updateRemoteRef(remoteName, branchName, headId);
+    }
+
+    private static void updateRemoteRef(String remoteName, String branchName, String commitId) {
+        Refs.snapshot().update(Refs.REMOTES + remoteName + "/" + branchName, commitId);
+    }
+
+    /** Creates a repository in CWD holding every branch of the repository
+     *  whose .gitlet directory is REMOTEPATH, and checks out its current
+     *  branch. Tracked paths stay those of the remote's working directory
+     *  and are mapped onto CWD through .gitlet/root. If SHARED, the remote
+     *  becomes an alternate and no object is copied. */
+    public static void clone(String remotePath, boolean shared) {
+        if (GITLET_DIR.exists()) {
+            System.out.println("A Gitlet version-control system already exists in the current directory.");
+            exit(0);
+        }
+        Remote remote = Remote.at(remotePath);
+        remote.exitIfMissing();
+        String branchName = remote.currentBranch();
+        Commit head = remote.readCommit(remote.branchHead(branchName));
+        String keyRoot = remote.keyRoot();
+        for (String key : head.getTrackedBlobs().keySet()) {
+            if (join(CWD, key.substring(keyRoot.length())).exists()) {
+                System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
+                exit(0);
+            }
+        }
+
+        GITLET_DIR.mkdir();
+        OBJECTS_DIR.mkdir();
+        COMMITS_DIR.mkdir();
+        REFS_DIR.mkdir();
+        BRANCH_HEADS_DIR.mkdir();
+        HashAlgorithm.record(HashAlgorithm.forName(remote.objectFormat()));
+        if (!keyRoot.equals(CWD.getPath())) {
+            writeContents(KEY_ROOT, keyRoot);
+        }
+        if (shared) {
+            Alternates.add(remote.getGitletDir());
+        }
+        Remote local = Remote.local();
+        if (!shared) {
+            remote.copyPacks(local);
+        }
+        for (String branch : remote.branches()) {
+            String branchHeadId = remote.branchHead(branch);
+            remote.transfer(local, branchHeadId);
+            local.setBranchHead(branch, branchHeadId);
+            updateRemoteRef(Remote.ORIGIN, branch, branchHeadId);
+        }
+        addRemote(Remote.ORIGIN, remote.getGitletDir().getPath());
+        setCurrentBranch(branchName);
+        for (Map.Entry<String, String> tracked : head.getTrackedBlobs().entrySet()) {
+            Blob.fromFile(tracked.getValue()).writeTo(WorkingTree.file(tracked.getKey()));
+        }
+    }
+
+    /** Adds a working directory at PATH that shares the objects and refs
+     *  of this repository, on branch BRANCHNAME, which is created at the
+     *  head commit if it does not exist. BRANCHNAME defaults to the name
+     *  of the directory. */
+    public static void worktreeAdd(String path, String branchName) {
+        File dir = new File(path);
+        if (!dir.isAbsolute()) {
+            dir = join(CWD, path);
+        }
+        dir = dir.toPath().normalize().toFile();
+        String[] existing = dir.list();
+        if (dir.isFile() || (existing != null && existing.length > 0)) {
+            System.out.println("Destination path already exists and is not empty.");
+            exit(0);
+        }
+        File registration = join(WORKTREES_DIR, dir.getName());
+        if (registration.exists()) {
+            System.out.println("A worktree with that name already exists.");
+            exit(0);
+        }
+        if (branchName == null) {
+            branchName = dir.getName();
+        }
+        Refs refs = Refs.snapshot();
+        String commitId = refs.get(Refs.HEADS + branchName);
+        if (commitId == null) {
+            commitId = refs.headCommitId();
+            refs.update(Refs.HEADS + branchName, commitId);
+        } else if (isCurrBranch(branchName)) {
+            System.out.println("That branch is already checked out.");
+            exit(0);
+        } else {
+            exitIfCheckedOut(branchName);
+        }
+
+        File worktreeGitletDir = join(dir, GITLET_DIR.getName());
+        worktreeGitletDir.mkdirs();
+        writeContents(join(worktreeGitletDir, "commondir"), COMMON_DIR.getAbsolutePath());
+        writeContents(join(worktreeGitletDir, KEY_ROOT.getName()), WorkingTree.keyRoot());
+        writeContents(join(worktreeGitletDir, HEAD.getName()), HEAD_BRANCH_REF_PATH + branchName);
+        WORKTREES_DIR.mkdirs();
+        writeContents(registration, worktreeGitletDir.getPath());
+        String keyRoot = WorkingTree.keyRoot();
+        for (Map.Entry<String, String> tracked : Commit.find(commitId).getTrackedBlobs().entrySet()) {
+            Blob.fromFile(tracked.getValue())
+                    .writeTo(join(dir, tracked.getKey().substring(keyRoot.length())));
+        }
+    }
+
+    /** Prints every worktree with its head commit and branch. */
+    public static void worktreeList() {
+        StringBuilder sb = new StringBuilder();
+        for (File gitletDir : worktreeGitletDirs()) {
+            Refs refs = Refs.snapshot(gitletDir);
+            String commitId = refs.headCommitId();
+            sb.append(gitletDir.getAbsoluteFile().getParent()).append(' ')
+              .append(commitId == null ? "0000000" : commitId.substring(0, 7))
+              .append(" [").append(refs.currentBranch()).append("]\n");
+        }
+        System.out.print(sb);
+    }
+
+    /** Forgets the worktrees whose directories were deleted. */
+    public static void worktreePrune() {
+        List<String> names = plainFilenamesIn(WORKTREES_DIR);
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            File registration = join(WORKTREES_DIR, name);
+            if (!join(new File(readContentsAsString(registration)), HEAD.getName()).isFile()) {
+                registration.delete();
+            }
+        }
+    }
+
+    /** Returns the .gitlet directory of the main working directory and of
+     *  every worktree that still exists. */
+    static List<File> worktreeGitletDirs() {
+        List<File> dirs = new ArrayList<>(List.of(COMMON_DIR));
+        List<String> names = plainFilenamesIn(WORKTREES_DIR);
+        if (names != null) {
+            for (String name : names) {
+                File gitletDir = new File(readContentsAsString(join(WORKTREES_DIR, name)));
+                if (join(gitletDir, HEAD.getName()).isFile()) {
+                    dirs.add(gitletDir);
+                }
+            }
+        }
+        return dirs;
+    }
+
+    /** Exits if BRANCHNAME is the current branch of another worktree. */
+    private static void exitIfCheckedOut(String branchName) {
+        for (File gitletDir : worktreeGitletDirs()) {
+            if (!gitletDir.getAbsoluteFile().equals(GITLET_DIR.getAbsoluteFile())
+                    && readContentsAsString(join(gitletDir, HEAD.getName()))
+                            .equals(HEAD_BRANCH_REF_PATH + branchName)) {
+                System.out.println("That branch is checked out in another worktree.");
+                exit(0);
+            }
+        }
+    }
+
+    /** Makes this repository read objects from the repository whose .gitlet
+     *  directory is at PATH before its own. */
+    public static void addAlternate(String path) {
+        Remote alternate = Remote.at(path);
+        alternate.exitIfMissing();
+        alternate.exitIfIncompatible(Remote.local());
+        Alternates.add(alternate.getGitletDir());
     }
 
     public static void merge(String branchName) {
-        Index stagingArea = Index.fromFile();
-        File branchFile = join(BRANCH_HEADS_DIR, branchName);
-        exitIfNotExists(branchFile);
-        String givenBranchHeadId = readContentsAsString(branchFile);
+        Index stagingArea = INDEX.exists() ? Index.fromFile() : new Index();
+        String givenBranchHeadId = getBranchHeadCommitId(branchName);
         Commit currBranchHead = getCurrentBranchHeadCommit();
         checkUntracked(currBranchHead);
         if (!stagingArea.isClean()) {
@@ -495,7 +1300,7 @@ public class Repository {
 
         Map<String, String> splitPointTrackedBlobs = splitPoint.getTrackedBlobs();
         Map<String, String> currBranchTrackedBlobs = currBranchHead.getTrackedBlobs();
-        Map<String, String> givenBranchTrackedBlobs = givenBranchHead.getTrackedBlobs();
+        Map<String, String> givenBranchTrackedBlobs = new HashMap<>(givenBranchHead.getTrackedBlobs());
         boolean isConflicted = false;
         for (String blobKey: splitPointTrackedBlobs.keySet()) {
             String spBlobId = splitPointTrackedBlobs.get(blobKey);
@@ -504,14 +1309,16 @@ public class Repository {
 
             if (gbBlobId == null && !isModified(spBlobId, cbBlobId)) { // case 6
                 stagingArea.remove(blobKey);
-                File file = new File(blobKey);
+                File file = WorkingTree.file(blobKey);
                 file.delete();
             } else if (cbBlobId == null && !isModified(spBlobId, gbBlobId)) { // case 7 do nothing
                 givenBranchTrackedBlobs.remove(blobKey);
             } else if (isModified(spBlobId, gbBlobId)
                     && !isModified(spBlobId, cbBlobId)) { // case 1
                 stagingArea.add(blobKey, gbBlobId);
-                writeContents(new File(blobKey), Blob.fromFile(gbBlobId).getContentAsString());
+                if (SparseCheckout.includes(blobKey)) {
+                    writeContents(WorkingTree.file(blobKey), Blob.fromFile(gbBlobId).getContentAsString());
+                }
             } else if (!isModified(spBlobId, gbBlobId)
                     && isModified(spBlobId, cbBlobId)) { // case 2
             } else if ((gbBlobId == null && cbBlobId == null)
@@ -526,7 +1333,7 @@ public class Repository {
                 String cbContent = cbBlobId == null ? "" : Blob.fromFile(cbBlobId).getContentAsString();
                 String gbContent = gbBlobId == null ? "" : Blob.fromFile(gbBlobId).getContentAsString();
                 String conflictContent = "<<<<<<< HEAD\n" + cbContent + "=======\n" + gbContent + ">>>>>>>";
-                File newBlobFile = new File(blobKey);
+                File newBlobFile = WorkingTree.file(blobKey);
                 writeContents(newBlobFile, conflictContent);
                 stagingArea.add(newBlobFile);
                 isConflicted = true;
@@ -537,9 +1344,9 @@ public class Repository {
         // case 4 do nothing
 
         for (String blobKey: givenBranchTrackedBlobs.keySet()) { // case 5
-            File file = new File(blobKey);
-            String fileName = file.getName();
-            checkout(givenBranchHead, fileName);
+            if (SparseCheckout.includes(blobKey)) {
+                checkout(givenBranchHead, WorkingTree.file(blobKey).getName());
+            }
             stagingArea.add(blobKey, givenBranchTrackedBlobs.get(blobKey));
         }
 
@@ -567,7 +1374,14 @@ public class Repository {
         Set<String> checkedCommitIds = new HashSet<>();
         while (true) {
             Commit latestCommit = commitsQueue.poll();
-            List<String> parentCommitIds = latestCommit.getParents();
+            if (latestCommit == null) {
+                System.out.println("No split point in front of the shallow boundary.");
+                System.exit(0);
+            }
+            List<String> parentCommitIds = Shallow.parentsOf(latestCommit);
+            if (parentCommitIds.isEmpty()) {
+                continue;
+            }
             String firstParentCommitId = parentCommitIds.get(0);
             Commit firstParentCommit = Commit.find(firstParentCommitId);
             if (checkedCommitIds.contains(firstParentCommitId)) {
@@ -579,6 +1393,429 @@ public class Repository {
         }
     }
 
+    /** Applies the changes of commit COMMITID onto the current branch as a
+     *  new commit with its message. Conflicting files are committed with
+     *  conflict markers, as merge does. */
+    public static void cherryPick(String commitId) {
+        Commit head = getCurrentBranchHeadCommit();
+        exitIfUncommitted();
+        Commit picked = Commit.find(getFullCommitId(commitId));
+        TreeMerge treeMerge = replay(picked, head);
+        if (treeMerge.isUnchanged()) {
+            System.out.println("No changes added to the commit.");
+            exit(0);
+        }
+        treeMerge.markConflicts();
+        Commit newHead = new Commit(picked.getMessage(), treeMerge.getResult(), List.of(head.getId()));
+        newHead.write();
+        moveHead(head, newHead);
+        if (!treeMerge.getConflicts().isEmpty()) {
+            System.out.println("Encountered a merge conflict.");
+        }
+    }
+
+    /** Replays the commits of the current branch that BRANCHNAME does not
+     *  have on top of it, oldest first. Every commit is merged in memory
+     *  and the working tree is only updated once, at the end. On a
+     *  conflict the rebase stops before anything has changed. */
+    public static void rebase(String branchName) {
+        Commit head = getCurrentBranchHeadCommit();
+        exitIfUncommitted();
+        Commit upstream = Commit.find(getBranchHeadCommitId(branchName));
+        Set<String> upstreamCommits = ancestorsOf(upstream);
+        if (upstreamCommits.contains(head.getId())) {
+            moveHead(head, upstream);
+            System.out.println("Current branch fast-forwarded.");
+            exit(0);
+        }
+        Deque<Commit> toReplay = new ArrayDeque<>();
+        Commit splitPoint = head;
+        while (!upstreamCommits.contains(splitPoint.getId())) {
+            toReplay.push(splitPoint);
+            List<String> parents = Shallow.parentsOf(splitPoint);
+            if (parents.isEmpty()) {
+                System.out.println("No split point in front of the shallow boundary.");
+                exit(0);
+            }
+            splitPoint = Commit.find(parents.get(0));
+        }
+        if (splitPoint.getId().equals(upstream.getId())) {
+            System.out.println("Current branch is up to date.");
+            exit(0);
+        }
+        Commit newHead = upstream;
+        for (Commit commit : toReplay) {
+            TreeMerge treeMerge = replay(commit, newHead);
+            if (!treeMerge.getConflicts().isEmpty()) {
+                System.out.println("Encountered a merge conflict replaying " + commit.getId().substring(0, 7)
+                        + " in " + WorkingTree.file(treeMerge.getConflicts().get(0)).getName() + "; nothing was changed.");
+                exit(0);
+            }
+            if (treeMerge.isUnchanged()) {
+                continue;
+            }
+            newHead = new Commit(commit.getMessage(), treeMerge.getResult(), List.of(newHead.getId()));
+            newHead.write();
+        }
+        moveHead(head, newHead);
+    }
+
+    /** Merges the changes COMMIT made since the parent log follows into
+     *  the tree of ONTO. */
+    private static TreeMerge replay(Commit commit, Commit onto) {
+        List<String> parents = Shallow.parentsOf(commit);
+        Map<String, String> base = parents.isEmpty()
+                ? Map.of() : Commit.find(parents.get(0)).getTrackedBlobs();
+        return new TreeMerge(base, onto.getTrackedBlobs(), commit.getTrackedBlobs());
+    }
+
+    private static Set<String> ancestorsOf(Commit commit) {
+        Set<String> ancestors = new HashSet<>();
+        Deque<Commit> toVisit = new ArrayDeque<>(List.of(commit));
+        ancestors.add(commit.getId());
+        while (!toVisit.isEmpty()) {
+            for (String parentId : Shallow.parentsOf(toVisit.pop())) {
+                if (ancestors.add(parentId)) {
+                    toVisit.push(Commit.find(parentId));
+                }
+            }
+        }
+        return ancestors;
+    }
+
+    private static void exitIfUncommitted() {
+        Index stagingArea = Index.fromFile();
+        if (stagingArea != null && !stagingArea.isClean()) {
+            System.out.println("You have uncommitted changes.");
+            exit(0);
+        }
+    }
+
+    /** Moves the current branch from HEAD to NEWHEAD, rewriting only the
+     *  working files whose blobs differ between the two. */
+    private static void moveHead(Commit head, Commit newHead) {
+        checkUntracked(newHead);
+        updateWorkingTree(head.getTrackedBlobs(), newHead.getTrackedBlobs());
+        Index stagingArea = Index.fromFile();
+        if (stagingArea != null) {
+            stagingArea.clear();
+        }
+        updateBranchHead(newHead.getId());
+    }
+
+    /** Rewrites the working files whose blobs differ between the trees
+     *  FROM and TO, and deletes the files only FROM has. */
+    private static void updateWorkingTree(Map<String, String> from, Map<String, String> to) {
+        for (Map.Entry<String, String> tracked : to.entrySet()) {
+            if (!tracked.getValue().equals(from.get(tracked.getKey()))
+                    && SparseCheckout.includes(tracked.getKey())) {
+                Blob.fromFile(tracked.getValue()).writeTo(WorkingTree.file(tracked.getKey()));
+            }
+        }
+        for (String key : from.keySet()) {
+            if (!to.containsKey(key)) {
+                WorkingTree.file(key).delete();
+            }
+        }
+    }
+
+    /** Starts a bisection on the branch bisect, marking BAD and GOODS if
+     *  given. */
+    public static void bisectStart(String bad, List<String> goods) {
+        if (Bisect.isActive()) {
+            System.out.println("A bisection is already in progress.");
+            exit(0);
+        }
+        if (Refs.snapshot().get(Refs.HEADS + Bisect.BRANCH) != null) {
+            System.out.println("A branch named " + Bisect.BRANCH + " already exists.");
+            exit(0);
+        }
+        exitIfUncommitted();
+        String badId = bad == null ? null : resolveRevision(bad);
+        List<String> goodIds = new ArrayList<>();
+        for (String good : goods) {
+            goodIds.add(resolveRevision(good));
+        }
+        Refs refs = Refs.snapshot();
+        Bisect.start(refs.currentBranch());
+        refs.update(Refs.HEADS + Bisect.BRANCH, refs.headCommitId());
+        refs.setCurrentBranch(Bisect.BRANCH);
+        if (badId != null) {
+            Bisect.setBad(badId);
+        }
+        for (String goodId : goodIds) {
+            Bisect.addGood(goodId);
+        }
+        bisectNext();
+    }
+
+    /** Marks REV, or the head commit if REV is null, as good, bad or
+     *  skipped according to MARK and checks out the next commit to test.
+     *  Returns true once the bisection is over. */
+    public static boolean bisectMark(String mark, String rev) {
+        if (!Bisect.isActive()) {
+            System.out.println("No bisection is in progress.");
+            exit(0);
+        }
+        String commitId = rev == null ? getCurrBranchHeadCommitId() : resolveRevision(rev);
+        if (mark.equals("good")) {
+            Bisect.addGood(commitId);
+        } else if (mark.equals("bad")) {
+            Bisect.setBad(commitId);
+        } else {
+            Bisect.addSkipped(commitId);
+        }
+        return bisectNext();
+    }
+
+    /** Checks out the commit that best halves the candidates, or reports
+     *  the first bad commit. Returns true once the bisection is over. */
+    private static boolean bisectNext() {
+        String bad = Bisect.bad();
+        if (bad == null || Bisect.goods().isEmpty()) {
+            System.out.println("Waiting for both good and bad commits.");
+            return false;
+        }
+        List<String> candidates = Bisect.candidates();
+        if (candidates.isEmpty()) {
+            System.out.println("The bad commit is an ancestor of a good commit.");
+            return true;
+        }
+        if (candidates.size() == 1) {
+            message("%s is the first bad commit.", bad);
+            System.out.print(Commit.find(bad).getLog());
+            return true;
+        }
+        String next = Bisect.midpoint(candidates, Bisect.skipped());
+        if (next == null) {
+            System.out.println("There are only skipped commits left to test. The first bad commit could be any of:");
+            for (String id : candidates) {
+                System.out.println(id);
+            }
+            return true;
+        }
+        Commit commit = Commit.find(next);
+        message("Bisecting: %d commits left to test after this.", candidates.size() / 2);
+        moveHead(getCurrentBranchHeadCommit(), commit);
+        message("[%s] %s", next, commit.getMessage());
+        return false;
+    }
+
+    /** Ends the bisection and checks out the branch it started from. */
+    public static void bisectReset() {
+        if (!Bisect.isActive()) {
+            System.out.println("No bisection is in progress.");
+            exit(0);
+        }
+        Refs refs = Refs.snapshot();
+        String branchName = Bisect.startBranch();
+        Commit head = getCurrentBranchHeadCommit();
+        Commit branchHead = Commit.find(refs.get(Refs.HEADS + branchName));
+        checkUntracked(branchHead);
+        updateWorkingTree(head.getTrackedBlobs(), branchHead.getTrackedBlobs());
+        Index stagingArea = Index.fromFile();
+        if (stagingArea != null) {
+            stagingArea.clear();
+        }
+        refs.setCurrentBranch(branchName);
+        refs.delete(Refs.HEADS + Bisect.BRANCH);
+        Bisect.clear();
+    }
+
+    /** Runs COMMAND in the working directory on every commit to test until
+     *  the first bad commit is found: exit code 0 marks it good, 125 skips
+     *  it, any other code below 128 marks it bad, and the others stop. */
+    public static void bisectRun(List<String> command) {
+        if (!Bisect.isActive()) {
+            System.out.println("No bisection is in progress.");
+            exit(0);
+        }
+        if (Bisect.bad() == null || Bisect.goods().isEmpty()) {
+            System.out.println("Waiting for both good and bad commits.");
+            exit(0);
+        }
+        while (true) {
+            int code;
+            try {
+                code = new ProcessBuilder(command).directory(CWD).inheritIO().start().waitFor();
+            } catch (IOException excp) {
+                throw error("Could not run %s: %s", command.get(0), excp.getMessage());
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            String mark = code == 0 ? "good" : code == 125 ? "skip" : code < 128 ? "bad" : null;
+            if (mark == null) {
+                message("bisect run failed: %s exited with %d.", command.get(0), code);
+                exit(0);
+            }
+            if (bisectMark(mark, null)) {
+                return;
+            }
+        }
+    }
+
+    /** Saves the staging area and the working directory, untracked files
+     *  included, as a stash and brings both back to the head commit. */
+    public static void stashPush() {
+        Commit head = getCurrentBranchHeadCommit();
+        Map<String, String> headTree = head.getTrackedBlobs();
+        Index stagingArea = Index.fromFile();
+        Map<String, String> indexTree = new HashMap<>(headTree);
+        if (stagingArea != null) {
+            indexTree.putAll(stagingArea.getStaged());
+            indexTree.keySet().removeAll(stagingArea.getRmStaged());
+        }
+        Map<String, String> workingTree = getCurrentFilesMap();
+        for (Map.Entry<String, String> tracked : headTree.entrySet()) {
+            if (!SparseCheckout.includes(tracked.getKey())) {
+                workingTree.putIfAbsent(tracked.getKey(), tracked.getValue());
+            }
+        }
+        if (workingTree.equals(headTree) && indexTree.equals(headTree)) {
+            System.out.println("No local changes to save.");
+            exit(0);
+        }
+        Set<String> storedBlobs = new HashSet<>(indexTree.values());
+        for (Map.Entry<String, String> file : workingTree.entrySet()) {
+            if (!storedBlobs.contains(file.getValue()) && !join(OBJECTS_DIR, file.getValue()).isFile()) {
+                new Blob(WorkingTree.file(file.getKey())).create();
+            }
+        }
+        String subject = getCurrBranchName() + ": " + head.getId().substring(0, 7) + " " + head.getMessage();
+        Commit indexCommit = new Commit("index on " + subject, indexTree, List.of(head.getId()));
+        indexCommit.write();
+        Commit stash = new Commit("WIP on " + subject, workingTree, List.of(indexCommit.getId(), head.getId()));
+        stash.write();
+        Stash.push(stash.getId());
+        updateWorkingTree(workingTree, headTree);
+        if (stagingArea != null) {
+            stagingArea.clear();
+        }
+    }
+
+    /** Applies the INDEXth newest stash onto the head commit and drops it.
+     *  Nothing is changed if it conflicts with the head commit. */
+    public static void stashPop(int index) {
+        Commit stash = Commit.find(Stash.get(index));
+        Commit head = getCurrentBranchHeadCommit();
+        exitIfUncommitted();
+        Map<String, String> indexTree = Commit.find(stash.getParents().get(0)).getTrackedBlobs();
+        Map<String, String> baseTree = Commit.find(stash.getParents().get(1)).getTrackedBlobs();
+        Map<String, String> headTree = head.getTrackedBlobs();
+        TreeMerge treeMerge = new TreeMerge(baseTree, headTree, stash.getTrackedBlobs());
+        if (!treeMerge.getConflicts().isEmpty()) {
+            System.out.println("Encountered a merge conflict in "
+                    + WorkingTree.file(treeMerge.getConflicts().get(0)).getName() + "; the stash was kept.");
+            exit(0);
+        }
+        Map<String, String> result = treeMerge.getResult();
+        Map<String, String> currentFiles = getCurrentFilesMap();
+        Set<String> changed = new HashSet<>(result.keySet());
+        changed.addAll(headTree.keySet());
+        for (String key : changed) {
+            String blobId = result.get(key);
+            if (!Objects.equals(blobId, headTree.get(key))
+                    && !Objects.equals(currentFiles.get(key), headTree.get(key))
+                    && !Objects.equals(currentFiles.get(key), blobId)) {
+                if (headTree.containsKey(key)) {
+                    System.out.println("You have uncommitted changes.");
+                } else {
+                    System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
+                }
+                exit(0);
+            }
+        }
+        updateWorkingTree(headTree, result);
+        Index stagingArea = INDEX.exists() ? Index.fromFile() : new Index();
+        for (Map.Entry<String, String> staged : indexTree.entrySet()) {
+            String blobId = staged.getValue();
+            if (!blobId.equals(baseTree.get(staged.getKey())) && blobId.equals(result.get(staged.getKey()))) {
+                stagingArea.add(staged.getKey(), blobId);
+            }
+        }
+        for (String key : baseTree.keySet()) {
+            if (!indexTree.containsKey(key) && headTree.containsKey(key) && !result.containsKey(key)) {
+                stagingArea.remove(key);
+            }
+        }
+        stagingArea.save();
+        Stash.drop(index);
+    }
+
+    public static void stashList() {
+        StringBuilder sb = new StringBuilder();
+        List<String> entries = Stash.entries();
+        for (int i = 0; i < entries.size(); i += 1) {
+            sb.append("stash@{").append(i).append("}: ")
+              .append(Commit.find(entries.get(i)).getMessage()).append("\n");
+        }
+        System.out.print(sb);
+    }
+
+    public static void stashDrop(int index) {
+        Stash.drop(index);
+    }
+
+    /** Keeps only the tracked files whose names match one of PATTERNS in
+     *  the working directory. */
+    public static void sparseCheckoutSet(List<String> patterns) {
+        Commit head = getCurrentBranchHeadCommit();
+        Set<String> wasIncluded = sparsePaths(head);
+        SparseCheckout.set(patterns);
+        applySparseCheckout(head, wasIncluded);
+    }
+
+    /** Brings every tracked file back into the working directory. */
+    public static void sparseCheckoutDisable() {
+        Commit head = getCurrentBranchHeadCommit();
+        Set<String> wasIncluded = sparsePaths(head);
+        SparseCheckout.disable();
+        applySparseCheckout(head, wasIncluded);
+    }
+
+    public static void sparseCheckoutList() {
+        List<String> patterns = SparseCheckout.patterns();
+        if (patterns == null) {
+            System.out.println("Sparse checkout is not enabled.");
+            exit(0);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String pattern : patterns) {
+            sb.append(pattern).append("\n");
+        }
+        System.out.print(sb);
+    }
+
+    private static Set<String> sparsePaths(Commit commit) {
+        Set<String> included = new HashSet<>();
+        for (String key : commit.getTrackedBlobs().keySet()) {
+            if (SparseCheckout.includes(key)) {
+                included.add(key);
+            }
+        }
+        return included;
+    }
+
+    /** Writes the files of HEAD the patterns now include and WASINCLUDED
+     *  does not, and deletes those it did include and the patterns no
+     *  longer do. A file is only deleted if it holds what HEAD tracks. */
+    private static void applySparseCheckout(Commit head, Set<String> wasIncluded) {
+        Index stagingArea = Index.fromFile();
+        for (Map.Entry<String, String> tracked : head.getTrackedBlobs().entrySet()) {
+            String key = tracked.getKey();
+            File file = WorkingTree.file(key);
+            boolean included = SparseCheckout.includes(key);
+            if (included && !wasIncluded.contains(key) && !file.exists()) {
+                Blob.fromFile(tracked.getValue()).writeTo(file);
+            } else if (!included && wasIncluded.contains(key) && file.exists()
+                    && (stagingArea == null || !stagingArea.isStaged(key))
+                    && tracked.getValue().equals(Blob.generateId(file))) {
+                file.delete();
+            }
+        }
+    }
+
     private static String findSmallerParentBranchName(List<String> curr, List<String> given) {
         if (curr.size() <= given.size()) {
             return "curr";
@@ -0,0 +1,64 @@
+package gitlet;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static gitlet.Repository.SHALLOW;
+import static gitlet.Utils.*;
+
+/** The boundary commits of a shallow repository.
+ *
+ *  .gitlet/shallow lists one commit id per line. A boundary commit is
+ *  treated as if it had no parents, so log, merge and gc stop there
+ *  instead of loading the history behind it, which may have been moved
+ *  to the cold store. The commits themselves are never rewritten, so
+ *  removing the file restores the full history.
+ *
+ *  @author mak.skid
+ */
+class Shallow {
+
+    private static Set<String> boundaries;
+
+    /** Returns the boundary commit ids, read once per process. */
+    static synchronized Set<String> boundaries() {
+        if (boundaries == null) {
+            boundaries = new LinkedHashSet<>();
+            if (SHALLOW.isFile()) {
+                for (String line : readContentsAsString(SHALLOW).split("\n")) {
+                    if (!line.isEmpty()) {
+                        boundaries.add(line);
+                    }
+                }
+            }
+        }
+        return boundaries;
+    }
+
+    static boolean isBoundary(String commitId) {
+        return boundaries().contains(commitId);
+    }
+
+    /** Returns the parents of COMMIT as seen through the grafts: none for
+     *  a boundary commit. */
+    static List<String> parentsOf(Commit commit) {
+        if (isBoundary(commit.getId())) {
+            return List.of();
+        }
+        return commit.getParents();
+    }
+
+    /** Makes COMMITID a boundary. */
+    static synchronized void add(String commitId) {
+        if (boundaries().add(commitId)) {
+            writeContents(SHALLOW, String.join("\n", boundaries()) + "\n");
+        }
+    }
+
+    /** Removes every boundary, making the whole history visible again. */
+    static synchronized void clear() {
+        SHALLOW.delete();
+        boundaries = null;
+    }
+}
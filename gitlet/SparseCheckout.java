@@ -0,0 +1,69 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static gitlet.Repository.SPARSE_CHECKOUT;
+import static gitlet.Utils.*;
+
+/** The sparse-checkout patterns: globs over file names, one per line of
+ *  .gitlet/info/sparse-checkout. While the file exists, only the tracked
+ *  files matching a pattern are in the working directory. The others are
+ *  still tracked and committed, but checkout, reset, merge and the other
+ *  commands that update the working directory neither read their blobs
+ *  nor write them, and status does not report them as deleted.
+ *
+ *  @author mak.skid
+ */
+class SparseCheckout {
+
+    private static List<String> patterns;
+    private static List<PathMatcher> matchers;
+
+    /** Returns the patterns, read once per process, or null if sparse
+     *  checkout is disabled. */
+    static synchronized List<String> patterns() {
+        if (patterns == null && SPARSE_CHECKOUT.isFile()) {
+            patterns = new ArrayList<>();
+            matchers = new ArrayList<>();
+            for (String line : readContentsAsString(SPARSE_CHECKOUT).split("\n")) {
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    patterns.add(line);
+                    matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + line));
+                }
+            }
+        }
+        return patterns;
+    }
+
+    /** Returns true if the file tracked at KEY belongs in the working
+     *  directory. */
+    static boolean includes(String key) {
+        if (patterns() == null) {
+            return true;
+        }
+        String name = new File(key).getName();
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(Paths.get(name))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static synchronized void set(List<String> newPatterns) {
+        SPARSE_CHECKOUT.getParentFile().mkdirs();
+        writeContents(SPARSE_CHECKOUT, String.join("\n", newPatterns) + "\n");
+        patterns = null;
+    }
+
+    static synchronized void disable() {
+        SPARSE_CHECKOUT.delete();
+        patterns = null;
+        matchers = null;
+    }
+}
@@ -0,0 +1,72 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static gitlet.Repository.STASH;
+import static gitlet.Utils.*;
+
+/** The stack of stashed changes.
+ *
+ *  A stash is a commit of the working directory, untracked files
+ *  included, whose parents are a commit of the staging area and the head
+ *  commit it was made on, in that order. Both reuse the blobs of the head
+ *  commit and of the staging area, so only files that were changed but
+ *  never added get new blobs. .gitlet/stash lists the stash commit ids,
+ *  newest first.
+ *
+ *  @author mak.skid
+ */
+class Stash {
+
+    /** Returns the stash commit ids, newest first. */
+    static List<String> entries() {
+        List<String> entries = new ArrayList<>();
+        if (STASH.isFile()) {
+            for (String line : readContentsAsString(STASH).split("\n")) {
+                if (!line.isEmpty()) {
+                    entries.add(line);
+                }
+            }
+        }
+        return entries;
+    }
+
+    static void push(String commitId) {
+        List<String> entries = entries();
+        entries.add(0, commitId);
+        write(entries);
+    }
+
+    /** Removes the INDEXth newest stash and returns its commit id, or
+     *  exits if there is no such stash. */
+    static String drop(int index) {
+        List<String> entries = entries();
+        String commitId = get(entries, index);
+        entries.remove(index);
+        write(entries);
+        return commitId;
+    }
+
+    /** Returns the commit id of the INDEXth newest stash, or exits if there
+     *  is no such stash. */
+    static String get(int index) {
+        return get(entries(), index);
+    }
+
+    private static String get(List<String> entries, int index) {
+        if (index < 0 || index >= entries.size()) {
+            System.out.println("No stash entry found.");
+            System.exit(0);
+        }
+        return entries.get(index);
+    }
+
+    private static void write(List<String> entries) {
+        if (entries.isEmpty()) {
+            STASH.delete();
+        } else {
+            writeContents(STASH, String.join("\n", entries) + "\n");
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Date;
+
+import static gitlet.Repository.OBJECTS_DIR;
+import static gitlet.Repository.TAG_OBJECTS_DIR;
+import static gitlet.Utils.*;
+
+/** An annotated tag: a named, dated message about a commit, stored in
+ *  .gitlet/objects/tags and pointed to by a ref in refs/tags.
+ *
+ *  @author mak.skid
+ */
+public class Tag implements Dumpable {
+    private static final long serialVersionUID = 4817165402387139721L;
+
+    private final String name;
+    private final String target;
+    private final String message;
+    private final Date date;
+    private final String id;
+
+    public Tag(String name, String target, String message) {
+        this.name = name;
+        this.target = target;
+        this.message = message;
+        date = new Date();
+        id = hash("tag", name, target, message, Long.toString(date.getTime()));
+    }
+
+    private static File fileOf(File gitletDir, String id) {
+        return join(gitletDir, OBJECTS_DIR.getName(), TAG_OBJECTS_DIR.getName(), id);
+    }
+
+    static boolean exists(File gitletDir, String id) {
+        return fileOf(gitletDir, id).isFile();
+    }
+
+    static Tag find(File gitletDir, String id) {
+        return readObject(fileOf(gitletDir, id), Tag.class);
+    }
+
+    public void create() {
+        TAG_OBJECTS_DIR.mkdirs();
+        writeObject(join(TAG_OBJECTS_DIR, id), this);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    /** Returns this tag as text: the tagged commit, the name and the date
+     *  in milliseconds, then a blank line and the message. */
+    public String getText() {
+        return "object " + target + "\ntag " + name + "\ndate " + date.getTime()
+                + "\n\n" + message + "\n";
+    }
+
+    @Override
+    public void dump() {
+        System.out.println("tag " + id);
+        System.out.print(getText());
+    }
+}
@@ -0,0 +1,150 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Opt-in timing of the phases of a command.
+ *
+ *  Tracing is enabled with the --trace option or the GITLET_TRACE
+ *  environment variable. A value of "chrome" (--trace=chrome) prints the
+ *  spans as Chrome trace JSON, loadable in chrome://tracing or Perfetto;
+ *  any other value prints a summary table of count, bytes and time per
+ *  phase. Either is written to stderr when the command exits.
+ *
+ *  Instrumented code brackets a phase as
+ *
+ *        long start = Trace.start();
+ *        ...
+ *        Trace.end("Commit.find", start, bytes);
+ *
+ *  When tracing is disabled, start returns 0 and end returns immediately.
+ *
+ *  @author mak.skid
+ */
+class Trace {
+
+    /** Environment variable that enables tracing. */
+    static final String ENV_VAR = "GITLET_TRACE";
+
+    private static boolean enabled;
+    private static boolean chrome;
+
+    /** Totals of one phase. */
+    private static class Phase {
+        final LongAdder count = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+    }
+
+    /** One completed span, kept for Chrome trace output. */
+    private static class Span {
+        final String name;
+        final long startNanos;
+        final long durationNanos;
+        final long bytes;
+        final long threadId;
+
+        Span(String name, long startNanos, long durationNanos, long bytes) {
+            this.name = name;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+            this.bytes = bytes;
+            this.threadId = Thread.currentThread().getId();
+        }
+    }
+
+    private static final Map<String, Phase> PHASES = new ConcurrentHashMap<>();
+    private static final Queue<Span> SPANS = new ConcurrentLinkedQueue<>();
+    private static long originNanos;
+
+    /** Enables tracing if the environment asks for it. */
+    static void enableFromEnvironment() {
+        String mode = System.getenv(ENV_VAR);
+        if (mode != null && !mode.isEmpty() && !mode.equals("0")) {
+            enable(mode);
+        }
+    }
+
+    /** Enables tracing in MODE, "chrome" or anything else for a summary,
+     *  and reports on stderr when the JVM exits. */
+    static synchronized void enable(String mode) {
+        chrome = "chrome".equals(mode);
+        if (enabled) {
+            return;
+        }
+        enabled = true;
+        originNanos = System.nanoTime();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> report(System.err)));
+    }
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Returns the start time of a phase, or 0 if tracing is disabled. */
+    static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /** Records a phase NAME that started at START and handled BYTES bytes. */
+    static void end(String name, long start, long bytes) {
+        if (!enabled) {
+            return;
+        }
+        long duration = System.nanoTime() - start;
+        Phase phase = PHASES.computeIfAbsent(name, k -> new Phase());
+        phase.count.increment();
+        phase.bytes.add(bytes);
+        phase.nanos.add(duration);
+        if (chrome) {
+            SPANS.add(new Span(name, start, duration, bytes));
+        }
+    }
+
+    /** Records a phase NAME that started at START. */
+    static void end(String name, long start) {
+        end(name, start, 0);
+    }
+
+    private static void report(PrintStream out) {
+        if (chrome) {
+            printChromeTrace(out);
+        } else {
+            printSummary(out);
+        }
+        out.flush();
+    }
+
+    private static void printSummary(PrintStream out) {
+        out.printf("%-24s %10s %14s %12s%n", "phase", "count", "bytes", "ms");
+        for (Map.Entry<String, Phase> entry : new TreeMap<>(PHASES).entrySet()) {
+            Phase phase = entry.getValue();
+            out.printf("%-24s %10d %14d %12.3f%n", entry.getKey(),
+                    phase.count.sum(), phase.bytes.sum(), phase.nanos.sum() / 1e6);
+        }
+        ObjectCache cache = ObjectCache.SHARED;
+        out.printf("object cache: %d hits, %d misses, %d bytes cached%n",
+                cache.getHits(), cache.getMisses(), cache.getSizeBytes());
+    }
+
+    private static void printChromeTrace(PrintStream out) {
+        StringBuilder json = new StringBuilder("{\"traceEvents\":[");
+        String separator = "\n";
+        for (Span span : SPANS) {
+            json.append(separator)
+                .append("{\"name\":\"").append(span.name)
+                .append("\",\"ph\":\"X\",\"pid\":1,\"tid\":").append(span.threadId)
+                .append(",\"ts\":").append((span.startNanos - originNanos) / 1000.0)
+                .append(",\"dur\":").append(span.durationNanos / 1000.0)
+                .append(",\"args\":{\"bytes\":").append(span.bytes).append("}}");
+            separator = ",\n";
+        }
+        json.append("\n],\"displayTimeUnit\":\"ms\"}");
+        out.println(json);
+    }
+}
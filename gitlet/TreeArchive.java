@@ -0,0 +1,190 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static gitlet.Utils.*;
+
+/** Writes the tree of a commit as a tar or zip archive, read straight from
+ *  the object store without touching the working directory.
+ *
+ *  Entries are written in path order. Blobs are read and decoded on the
+ *  common fork-join pool, at most WINDOW of them ahead of the entry being
+ *  written, so memory holds a bounded number of small blobs at a time. A
+ *  chunked blob is not assembled: its chunks are copied to the output one
+ *  by one.
+ *
+ *  @author mak.skid
+ */
+class TreeArchive {
+
+    static final String TAR = "tar";
+    static final String ZIP = "zip";
+
+    /** Blobs decoded ahead of the entry being written. */
+    private static final int WINDOW = 2 * Runtime.getRuntime().availableProcessors();
+
+    private static final int BLOCK = 512;
+    /** Tar output is padded to a whole number of records of this size. */
+    private static final int RECORD = 20 * BLOCK;
+
+    /** A decoded blob: its content, or its chunk ids and their total size. */
+    private static class Entry {
+        final String name;
+        final byte[] content;
+        final List<String> chunkIds;
+        final long size;
+
+        Entry(String name, Blob blob) {
+            this.name = name;
+            if (blob.isChunked()) {
+                content = null;
+                chunkIds = blob.getChunkIds();
+                long total = 0;
+                for (String chunkId : chunkIds) {
+                    total += Chunker.size(chunkId);
+                }
+                size = total;
+            } else {
+                content = blob.getContent();
+                chunkIds = null;
+                size = content.length;
+            }
+        }
+
+        void writeContent(OutputStream out) throws IOException {
+            if (content != null) {
+                out.write(content);
+                return;
+            }
+            for (String chunkId : chunkIds) {
+                out.write(Chunker.read(chunkId));
+            }
+        }
+    }
+
+    private final Commit commit;
+    private final String format;
+    private long written;
+
+    private TreeArchive(Commit commit, String format) {
+        this.commit = commit;
+        this.format = format;
+    }
+
+    /** Writes the tree of COMMIT to OUT as an archive in FORMAT, TAR or
+     *  ZIP. OUT is flushed but not closed. */
+    static void write(Commit commit, String format, OutputStream out) throws IOException {
+        new TreeArchive(commit, format).writeTo(out);
+    }
+
+    private void writeTo(OutputStream out) throws IOException {
+        Map<String, String> tree = new TreeMap<>();
+        for (Map.Entry<String, String> tracked : commit.getTrackedBlobs().entrySet()) {
+            tree.put(WorkingTree.name(tracked.getKey()), tracked.getValue());
+        }
+        ZipOutputStream zip = format.equals(ZIP) ? new ZipOutputStream(out) : null;
+        Iterator<Map.Entry<String, String>> pending = tree.entrySet().iterator();
+        Deque<CompletableFuture<Entry>> decoding = new ArrayDeque<>();
+        while (pending.hasNext() || !decoding.isEmpty()) {
+            while (pending.hasNext() && decoding.size() < WINDOW) {
+                Map.Entry<String, String> next = pending.next();
+                decoding.add(CompletableFuture.supplyAsync(
+                        () -> new Entry(next.getKey(), Blob.fromFile(next.getValue()))));
+            }
+            Entry entry;
+            try {
+                entry = decoding.poll().join();
+            } catch (CompletionException excp) {
+                throw new IOException(excp.getCause());
+            }
+            if (zip != null) {
+                writeZipEntry(zip, entry);
+            } else {
+                writeTarEntry(out, entry);
+            }
+        }
+        if (zip != null) {
+            zip.finish();
+        } else {
+            writeTarEnd(out);
+        }
+        out.flush();
+    }
+
+    private void writeZipEntry(ZipOutputStream zip, Entry entry) throws IOException {
+        ZipEntry zipEntry = new ZipEntry(entry.name);
+        zipEntry.setTime(commit.getDate().getTime());
+        zip.putNextEntry(zipEntry);
+        entry.writeContent(zip);
+        zip.closeEntry();
+    }
+
+    private void writeTarEntry(OutputStream out, Entry entry) throws IOException {
+        byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+        if (name.length > 100) {
+            throw error("File name too long for a tar archive: %s", entry.name);
+        }
+        byte[] header = new byte[BLOCK];
+        System.arraycopy(name, 0, header, 0, name.length);
+        putOctal(header, 100, 8, 0644);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        putOctal(header, 124, 12, entry.size);
+        putOctal(header, 136, 12, commit.getDate().getTime() / 1000);
+        header[156] = '0';
+        put(header, 257, "ustar\0");
+        put(header, 263, "00");
+        /* the checksum is taken with its own field filled with spaces */
+        put(header, 148, "        ");
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        putOctal(header, 148, 7, checksum);
+        out.write(header);
+        entry.writeContent(out);
+        written += BLOCK + entry.size;
+        pad(out, BLOCK);
+    }
+
+    /** Ends the tar archive with two zero blocks, padded to a record. */
+    private void writeTarEnd(OutputStream out) throws IOException {
+        out.write(new byte[2 * BLOCK]);
+        written += 2 * BLOCK;
+        pad(out, RECORD);
+    }
+
+    /** Writes zeros up to the next multiple of SIZE bytes. */
+    private void pad(OutputStream out, int size) throws IOException {
+        int padding = (int) ((size - written % size) % size);
+        out.write(new byte[padding]);
+        written += padding;
+    }
+
+    /** Puts VALUE into the LENGTH bytes of HEADER at OFFSET as zero-padded
+     *  octal digits followed by a NUL. */
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        String digits = Long.toOctalString(value);
+        if (digits.length() > length - 1) {
+            throw error("Value too large for a tar header: %d", value);
+        }
+        put(header, offset, "0".repeat(length - 1 - digits.length()) + digits + "\0");
+    }
+
+    private static void put(byte[] header, int offset, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+}
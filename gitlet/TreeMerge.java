@@ -0,0 +1,78 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/** A three-way merge of the trees of three commits, done on their tracked
+ *  blob ids alone, without reading a blob or touching the working tree.
+ *
+ *  A path takes the side that changed it since the base. If both sides
+ *  changed it differently, it is a conflict and keeps our blob until
+ *  markConflicts replaces it with one holding both contents.
+ *
+ *  @author mak.skid
+ */
+class TreeMerge {
+
+    private final Map<String, String> ours;
+    private final Map<String, String> theirs;
+    private final TreeMap<String, String> result = new TreeMap<>();
+    private final List<String> conflicts = new ArrayList<>();
+
+    /** Merges THEIRS into OURS, both changed since BASE. */
+    TreeMerge(Map<String, String> base, Map<String, String> ours, Map<String, String> theirs) {
+        this.ours = ours;
+        this.theirs = theirs;
+        Set<String> paths = new HashSet<>(ours.keySet());
+        paths.addAll(theirs.keySet());
+        paths.addAll(base.keySet());
+        for (String path : paths) {
+            String baseId = base.get(path);
+            String ourId = ours.get(path);
+            String theirId = theirs.get(path);
+            String mergedId;
+            if (Objects.equals(ourId, theirId) || Objects.equals(baseId, theirId)) {
+                mergedId = ourId;
+            } else if (Objects.equals(baseId, ourId)) {
+                mergedId = theirId;
+            } else {
+                conflicts.add(path);
+                mergedId = ourId;
+            }
+            if (mergedId != null) {
+                result.put(path, mergedId);
+            }
+        }
+        Collections.sort(conflicts);
+    }
+
+    /** Returns the merged tree. */
+    Map<String, String> getResult() {
+        return result;
+    }
+
+    List<String> getConflicts() {
+        return conflicts;
+    }
+
+    /** Returns true if the merge is clean and its tree is OURS. */
+    boolean isUnchanged() {
+        return conflicts.isEmpty() && result.equals(ours);
+    }
+
+    /** Stores a blob with conflict markers around both contents for every
+     *  conflict and puts it in the merged tree. */
+    void markConflicts() {
+        for (String path : conflicts) {
+            String content = "<<<<<<< HEAD\n" + contentOf(ours.get(path))
+                    + "=======\n" + contentOf(theirs.get(path)) + ">>>>>>>";
+            Blob blob = new Blob(path, content.getBytes(StandardCharsets.UTF_8));
+            blob.create();
+            result.put(path, blob.getId());
+        }
+    }
+
+    private static String contentOf(String blobId) {
+        return blobId == null ? "" : Blob.fromFile(blobId).getContentAsString();
+    }
+}
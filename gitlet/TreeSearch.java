@@ -0,0 +1,64 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** Searches the files of commits for lines matching a regular expression,
+ *  reading blobs from the object store without touching the working
+ *  directory.
+ *
+ *  Blobs are decoded and scanned on the common fork-join pool while the
+ *  matches are printed in path order, commit by commit. The matching lines
+ *  of every blob are kept by blob id, so a blob shared by several of the
+ *  searched commits is only read and scanned once.
+ *
+ *  @author mak.skid
+ */
+class TreeSearch {
+
+    private final Pattern pattern;
+    private final Map<String, CompletableFuture<List<String>>> scanned = new ConcurrentHashMap<>();
+
+    TreeSearch(Pattern pattern) {
+        this.pattern = pattern;
+    }
+
+    /** Prints the matching lines of COMMIT as PREFIX, path, line number and
+     *  line, separated by colons. */
+    void search(Commit commit, String prefix) {
+        Map<String, CompletableFuture<List<String>>> tree = new TreeMap<>();
+        for (Map.Entry<String, String> tracked : commit.getTrackedBlobs().entrySet()) {
+            tree.put(WorkingTree.name(tracked.getKey()), scanned.computeIfAbsent(tracked.getValue(),
+                    blobId -> CompletableFuture.supplyAsync(() -> scan(blobId))));
+        }
+        for (Map.Entry<String, CompletableFuture<List<String>>> file : tree.entrySet()) {
+            for (String match : file.getValue().join()) {
+                System.out.println(prefix + file.getKey() + ":" + match);
+            }
+        }
+    }
+
+    /** Returns the matching lines of the blob BLOBID, each preceded by its
+     *  line number and a colon. */
+    private List<String> scan(String blobId) {
+        List<String> matches = new ArrayList<>();
+        String content = Blob.fromFile(blobId).getContentAsString();
+        if (content.endsWith("\n")) {
+            content = content.substring(0, content.length() - 1);
+        }
+        String[] lines = content.split("\n", -1);
+        Matcher matcher = pattern.matcher("");
+        for (int i = 0; i < lines.length; i += 1) {
+            if (matcher.reset(lines[i]).find()) {
+                matches.add((i + 1) + ":" + lines[i]);
+            }
+        }
+        return matches;
+    }
+}
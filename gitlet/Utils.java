@@ -1,6 +1,7 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -9,14 +10,12 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -29,33 +28,70 @@ import java.util.List;
  */
 class Utils {
 
-    /** The length of a complete SHA-1 UID as a hexadecimal numeral. */
-    static final int UID_LENGTH = 40;
+    /* OBJECT IDS. */
+
+    /** The length of a complete UID of the current repository as a
+     *  hexadecimal numeral. */
+    static int uidLength() {
+        return HashAlgorithm.current().hexLength();
+    }
+
+    /** Returns the id, under the current repository's object format, of
+     *  the concatenation of VALS, which may be any mixture of byte arrays
+     *  and Strings. */
+    static String hash(Object... vals) {
+        return HashAlgorithm.current().hash(vals);
+    }
+
+    /** Returns the id of VAL under the current object format. */
+    static String hash(byte[] val) {
+        return HashAlgorithm.current().hash(val);
+    }
+
+    /** Returns the id of the concatenation of PREFIX and VAL under the
+     *  current object format. */
+    static String hash(String prefix, byte[] val) {
+        return HashAlgorithm.current().hash(prefix, val);
+    }
+
+    /** Returns the id of the concatenation of PREFIX and the contents of
+     *  FILE under the current object format, streaming the file. */
+    static String hash(String prefix, File file) {
+        return HashAlgorithm.current().hash(prefix, file);
+    }
 
     /* SHA-1 HASH VALUES. */
 
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
-            }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
-        } catch (NoSuchAlgorithmException excp) {
-            throw new IllegalArgumentException("System does not support SHA-1");
-        }
+        return HashAlgorithm.SHA1.hash(vals);
+    }
+
+    /** Returns the SHA-1 hash of VAL. */
+    static String sha1(byte[] val) {
+        return HashAlgorithm.SHA1.hash(val);
+    }
+
+    /** Returns the SHA-1 hash of the concatenation of PREFIX and VAL,
+     *  as sha1(PREFIX, VAL) without the varargs array. */
+    static String sha1(String prefix, byte[] val) {
+        return HashAlgorithm.SHA1.hash(prefix, val);
+    }
+
+    /** Returns the SHA-1 hash of the remaining bytes of BUFFER, consuming
+     *  them. */
+    static String sha1(ByteBuffer buffer) {
+        return HashAlgorithm.SHA1.hash(buffer);
+    }
+
+    /** Returns the SHA-1 hash of the concatenation of PREFIX and the
+     *  contents of FILE, the same as sha1(PREFIX, readContents(FILE)).
+     *  The file is streamed through a per-thread buffer rather than read
+     *  into memory.  FILE must be a normal file.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static String sha1(String prefix, File file) {
+        return HashAlgorithm.SHA1.hash(prefix, file);
     }
 
     /** Returns the SHA-1 hash of the concatenation of the strings in
@@ -99,7 +135,10 @@ class Utils {
             throw new IllegalArgumentException("must be a normal file");
         }
         try {
-            return Files.readAllBytes(file.toPath());
+            long start = Trace.start();
+            byte[] contents = Files.readAllBytes(file.toPath());
+            Trace.end("readContents", start, contents.length);
+            return contents;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -117,6 +156,8 @@ class Utils {
      *  either a String or a byte array.  Throws IllegalArgumentException
      *  in case of problems. */
     static void writeContents(File file, Object... contents) {
+        long start = Trace.start();
+        long bytes = 0;
         try {
             if (file.isDirectory()) {
                 throw
@@ -125,13 +166,17 @@ class Utils {
             BufferedOutputStream str =
                 new BufferedOutputStream(Files.newOutputStream(file.toPath()));
             for (Object obj : contents) {
+                byte[] objBytes;
                 if (obj instanceof byte[]) {
-                    str.write((byte[]) obj);
+                    objBytes = (byte[]) obj;
                 } else {
-                    str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
+                    objBytes = ((String) obj).getBytes(StandardCharsets.UTF_8);
                 }
+                str.write(objBytes);
+                bytes += objBytes.length;
             }
             str.close();
+            Trace.end("writeContents", start, bytes);
         } catch (IOException | ClassCastException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -141,11 +186,13 @@ class Utils {
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
+        long start = Trace.start();
         try {
             ObjectInputStream in =
                 new ObjectInputStream(new FileInputStream(file));
             T result = expectedClass.cast(in.readObject());
             in.close();
+            Trace.end("readObject", start, Trace.isEnabled() ? file.length() : 0);
             return result;
         } catch (IOException | ClassCastException
                  | ClassNotFoundException excp) {
@@ -222,6 +269,18 @@ class Utils {
         }
     }
 
+    /** Return an object of type T deserialized from BYTES, casting it to
+     *  EXPECTEDCLASS.  Throws IllegalArgumentException in case of problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try (ObjectInputStream in =
+                 new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return expectedClass.cast(in.readObject());
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
 
 
     /* MESSAGES AND ERROR REPORTING */
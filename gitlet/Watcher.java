@@ -0,0 +1,102 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/** The `gitlet watch` daemon, which records changed working files in the
+ *  journal read by WorkingTree.
+ *
+ *  The watcher holds a lock on .gitlet/fsmonitor.lock for as long as it
+ *  runs; commands only trust the journal while that lock is held, and
+ *  fall back to a full scan otherwise. It also journals the cookies that
+ *  commands create in .gitlet/fsmonitor-cookies to sync with it.
+ *
+ *  @author mak.skid
+ */
+class Watcher {
+
+    /** Returns true if a watcher is running on this repository. */
+    static boolean isRunning() {
+        if (!FSMONITOR_LOCK.exists()) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(FSMONITOR_LOCK.toPath(),
+                                                    StandardOpenOption.WRITE);
+             FileLock lock = channel.tryLock()) {
+            return lock == null;
+        } catch (OverlappingFileLockException excp) {
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Watches the working directory until the process is stopped. */
+    static void run() {
+        try (FileChannel lockChannel = FileChannel.open(FSMONITOR_LOCK.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = lockChannel.tryLock();
+             WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            if (lock == null) {
+                message("A watcher is already running.");
+                return;
+            }
+            Path root = CWD.toPath();
+            root.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE, OVERFLOW);
+            FSMONITOR_COOKIES.mkdirs();
+            FSMONITOR_COOKIES.toPath().register(watchService, ENTRY_CREATE, OVERFLOW);
+            WorkingTree.resetSnapshot();
+            message("Watching %s.", root);
+            while (true) {
+                WatchKey key = watchService.take();
+                StringBuilder lines = new StringBuilder();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        lines.append(WorkingTree.RESCAN).append('\n');
+                        continue;
+                    }
+                    Path changed = ((Path) key.watchable()).resolve((Path) event.context());
+                    if (!Files.isDirectory(changed)) {
+                        lines.append(changed).append('\n');
+                    }
+                }
+                append(lines.toString());
+                if (!key.reset()) {
+                    append(WorkingTree.RESCAN + "\n");
+                    return;
+                }
+            }
+        } catch (IOException excp) {
+            throw error("Cannot watch %s: %s", CWD, excp.getMessage());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Appends LINES to the journal under its lock. */
+    private static void append(String lines) throws IOException {
+        if (lines.isEmpty()) {
+            return;
+        }
+        try (RandomAccessFile journal = new RandomAccessFile(FSMONITOR_JOURNAL, "rw")) {
+            FileChannel channel = journal.getChannel();
+            FileLock lock = channel.lock();
+            try {
+                channel.write(ByteBuffer.wrap(lines.getBytes(StandardCharsets.UTF_8)),
+                              channel.size());
+            } finally {
+                lock.release();
+            }
+        }
+    }
+}
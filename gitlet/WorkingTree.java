@@ -0,0 +1,277 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** The files of the working directory and their blob ids.
+ *
+ *  Without a watcher, every call lists CWD and hashes every file. While
+ *  `gitlet watch` is running, the last known state is kept in
+ *  .gitlet/fsmonitor and the watcher appends the paths it sees change to
+ *  .gitlet/fsmonitor-journal, so only those paths are hashed again. A
+ *  journal line of "*" means the watcher lost events and forces a full
+ *  scan.
+ *
+ *  Before reading the journal, a command creates an empty cookie file in
+ *  .gitlet/fsmonitor-cookies, which the watcher also watches, and waits
+ *  until the watcher has journaled it. Events reach the watcher in order,
+ *  so by then every write that came before the command is in the journal
+ *  too. Cookies do not count as changes: the snapshot is only saved again
+ *  when a working file was journaled. If the cookie does not show up
+ *  within COOKIE_TIMEOUT, the command rebuilds the snapshot from a full
+ *  scan.
+ *
+ *  Alongside the snapshot, .gitlet/fsmonitor-fingerprints keeps an XXH64
+ *  fingerprint of every file. A journaled path is fingerprinted first and
+ *  hashed into a blob id only if its fingerprint changed, so files that
+ *  were rewritten or touched with the same content cost one fast pass.
+ *  A file whose fingerprint changed is streamed once more to take its
+ *  fingerprint and its id together, so the two always agree.
+ *
+ *  @author mak.skid
+ */
+class WorkingTree {
+
+    /** Journal line that invalidates the whole snapshot. */
+    static final String RESCAN = "*";
+
+    /** Milliseconds to wait for the watcher to journal a cookie. */
+    private static final long COOKIE_TIMEOUT = 1000;
+    private static final long COOKIE_POLL_INTERVAL = 2;
+    private static final AtomicInteger COOKIES = new AtomicInteger();
+
+    private static String keyRoot;
+
+    /** Returns the directory tracked paths are recorded under: the
+     *  working directory the repository was created in, kept in
+     *  .gitlet/root by a clone in another directory. */
+    static synchronized String keyRoot() {
+        if (keyRoot == null) {
+            keyRoot = KEY_ROOT.isFile() ? readContentsAsString(KEY_ROOT) : CWD.getPath();
+        }
+        return keyRoot;
+    }
+
+    /** Returns the path FILE of the working directory is tracked under. */
+    static String key(File file) {
+        return rebase(file.getPath(), CWD.getPath(), keyRoot());
+    }
+
+    /** Returns the file of the working directory tracked under KEY. */
+    static File file(String key) {
+        return new File(rebase(key, keyRoot(), CWD.getPath()));
+    }
+
+    /** Returns the name of the file tracked at KEY below the directory
+     *  tracked paths are recorded under, with forward slashes. */
+    static String name(String key) {
+        return Paths.get(keyRoot()).relativize(Paths.get(key)).toString().replace('\\', '/');
+    }
+
+    /** Returns PATH with its leading directory FROM replaced by TO. */
+    private static String rebase(String path, String from, String to) {
+        if (from.equals(to) || !path.startsWith(from + File.separator)) {
+            return path;
+        }
+        return to + path.substring(from.length());
+    }
+
+    /** Returns a map from the tracked path of every file in the working directory
+     *  to its blob id. */
+    static HashMap<String, String> files() {
+        long start = Trace.start();
+        HashMap<String, String> files;
+        if (!Watcher.isRunning()) {
+            files = scan();
+        } else {
+            files = refreshSnapshot();
+        }
+        Trace.end("WorkingTree.files", start, files.size());
+        return files;
+    }
+
+    /** Returns the same as files() while a watcher is running, and null
+     *  otherwise, for callers that are cheaper than a full scan on their own. */
+    static HashMap<String, String> watchedFiles() {
+        return Watcher.isRunning() ? files() : null;
+    }
+
+    /** Lists and hashes every file of the working directory that is not
+     *  ignored and untracked. */
+    static HashMap<String, String> scan() {
+        return scan(null);
+    }
+
+    /** Same as scan(), also putting the fingerprint of every file into
+     *  FINGERPRINTS unless it is null. */
+    private static HashMap<String, String> scan(Map<String, String> fingerprints) {
+        HashMap<String, String> files = new HashMap<>();
+        Set<String> tracked = Ignore.rules().isEmpty() ? Set.of() : trackedPaths();
+        for (File file : CWD.listFiles(File::isFile)) {
+            String key = key(file);
+            if (Ignore.isIgnored(file) && !tracked.contains(key)) {
+                continue;
+            }
+            if (fingerprints == null) {
+                files.put(key, Blob.generateId(file));
+            } else {
+                String[] ids = HashAlgorithm.current()
+                        .hashWithFingerprint(key, file, HashAlgorithm.XXH64);
+                files.put(key, ids[0]);
+                fingerprints.put(key, ids[1]);
+            }
+        }
+        return files;
+    }
+
+    /** Waits for the watcher to journal everything written so far, then
+     *  applies the journal to the snapshot and empties it. Rebuilds the
+     *  snapshot if the watcher does not keep up. */
+    private static HashMap<String, String> refreshSnapshot() {
+        File cookie = join(FSMONITOR_COOKIES, ProcessHandle.current().pid()
+                + "-" + COOKIES.incrementAndGet());
+        try {
+            cookie.createNewFile();
+            long deadline = System.currentTimeMillis() + COOKIE_TIMEOUT;
+            HashMap<String, String> files;
+            while ((files = applyJournal(cookie)) == null) {
+                if (System.currentTimeMillis() > deadline) {
+                    return rebuildSnapshot();
+                }
+                Thread.sleep(COOKIE_POLL_INTERVAL);
+            }
+            return files;
+        } catch (IOException excp) {
+            return scan();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            return scan();
+        } finally {
+            cookie.delete();
+        }
+    }
+
+    /** Once the journal holds COOKIE, applies it to the snapshot, saves
+     *  the result if a working file changed, empties the journal and
+     *  returns the result. Returns null and leaves the journal alone
+     *  before. */
+    private static HashMap<String, String> applyJournal(File cookie) throws IOException {
+        try (RandomAccessFile journal = new RandomAccessFile(FSMONITOR_JOURNAL, "rw")) {
+            FileLock lock = journal.getChannel().lock();
+            try {
+                List<String> dirtyPaths = readJournal(journal.getChannel());
+                if (!dirtyPaths.contains(cookie.getPath())) {
+                    return null;
+                }
+                dirtyPaths.removeIf(path -> isCookie(new File(path)));
+                HashMap<String, String> files = readSnapshot(FSMONITOR_SNAPSHOT);
+                if (files != null && dirtyPaths.isEmpty()) {
+                    journal.getChannel().truncate(0);
+                    return files;
+                }
+                HashMap<String, String> fingerprints = readSnapshot(FSMONITOR_FINGERPRINTS);
+                if (files == null || fingerprints == null || dirtyPaths.contains(RESCAN)) {
+                    fingerprints = new HashMap<>();
+                    files = scan(fingerprints);
+                } else {
+                    Set<String> tracked = Ignore.rules().isEmpty() ? Set.of() : trackedPaths();
+                    for (String path : dirtyPaths) {
+                        File file = new File(path);
+                        String key = key(file);
+                        if (file.isFile() && (!Ignore.isIgnored(file) || tracked.contains(key))) {
+                            String fingerprint = HashAlgorithm.XXH64.hash("", file);
+                            if (!files.containsKey(key) || !fingerprint.equals(fingerprints.get(key))) {
+                                String[] ids = HashAlgorithm.current()
+                                        .hashWithFingerprint(key, file, HashAlgorithm.XXH64);
+                                files.put(key, ids[0]);
+                                fingerprints.put(key, ids[1]);
+                            }
+                        } else {
+                            files.remove(key);
+                            fingerprints.remove(key);
+                        }
+                    }
+                }
+                writeObject(FSMONITOR_SNAPSHOT, files);
+                writeObject(FSMONITOR_FINGERPRINTS, fingerprints);
+                journal.getChannel().truncate(0);
+                return files;
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /** Returns true if FILE is a cookie written to sync with the watcher. */
+    static boolean isCookie(File file) {
+        return FSMONITOR_COOKIES.equals(file.getParentFile());
+    }
+
+    /** Replaces the snapshot with a full scan and empties the journal. */
+    static void resetSnapshot() {
+        try {
+            rebuildSnapshot();
+        } catch (IOException excp) {
+            throw error("Cannot write %s.", FSMONITOR_JOURNAL);
+        }
+    }
+
+    /** Replaces the snapshot with a full scan, empties the journal and
+     *  returns the scan. */
+    private static HashMap<String, String> rebuildSnapshot() throws IOException {
+        try (RandomAccessFile journal = new RandomAccessFile(FSMONITOR_JOURNAL, "rw")) {
+            FileLock lock = journal.getChannel().lock();
+            try {
+                HashMap<String, String> fingerprints = new HashMap<>();
+                HashMap<String, String> files = scan(fingerprints);
+                writeObject(FSMONITOR_SNAPSHOT, files);
+                writeObject(FSMONITOR_FINGERPRINTS, fingerprints);
+                journal.getChannel().truncate(0);
+                return files;
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /** Returns the map saved in FILE, or null if there is none. */
+    @SuppressWarnings("unchecked")
+    private static HashMap<String, String> readSnapshot(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            return readObject(file, HashMap.class);
+        } catch (IllegalArgumentException excp) {
+            return null;
+        }
+    }
+
+    /** Returns the distinct non-empty lines of the journal. */
+    private static List<String> readJournal(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            return Collections.emptyList();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        channel.read(buffer, 0);
+        Set<String> paths = new LinkedHashSet<>();
+        for (String line : new String(buffer.array(), StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isEmpty()) {
+                paths.add(line);
+            }
+        }
+        return new ArrayList<>(paths);
+    }
+}
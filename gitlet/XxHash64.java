@@ -0,0 +1,166 @@
+package gitlet;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+
+/** The 64-bit xxHash function, seed 0, exposed as a MessageDigest so that
+ *  it can be used wherever a digest is. It is many times faster than the
+ *  SHA family but offers no protection against deliberate collisions, so
+ *  it is only used to detect changes, never to name objects.
+ *
+ *  The 8-byte digest is big-endian, matching the canonical hex form of
+ *  xxHash64.
+ *
+ *  @author mak.skid
+ */
+class XxHash64 extends MessageDigest {
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    private static final VarHandle LONG_LE =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT_LE =
+            MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /** Input is consumed in stripes of this many bytes. */
+    private static final int STRIPE = 32;
+
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+    private long totalLength;
+    /** Bytes of an incomplete stripe. */
+    private final byte[] pending = new byte[STRIPE];
+    private int pendingLength;
+
+    XxHash64() {
+        super("XXH64");
+        engineReset();
+    }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return 8;
+    }
+
+    @Override
+    protected void engineReset() {
+        v1 = PRIME1 + PRIME2;
+        v2 = PRIME2;
+        v3 = 0;
+        v4 = -PRIME1;
+        totalLength = 0;
+        pendingLength = 0;
+    }
+
+    @Override
+    protected void engineUpdate(byte input) {
+        pending[pendingLength] = input;
+        pendingLength += 1;
+        totalLength += 1;
+        if (pendingLength == STRIPE) {
+            consumeStripe(pending, 0);
+            pendingLength = 0;
+        }
+    }
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int len) {
+        totalLength += len;
+        int end = offset + len;
+        if (pendingLength > 0) {
+            int fill = Math.min(STRIPE - pendingLength, len);
+            System.arraycopy(input, offset, pending, pendingLength, fill);
+            pendingLength += fill;
+            offset += fill;
+            if (pendingLength < STRIPE) {
+                return;
+            }
+            consumeStripe(pending, 0);
+            pendingLength = 0;
+        }
+        for (; offset + STRIPE <= end; offset += STRIPE) {
+            consumeStripe(input, offset);
+        }
+        pendingLength = end - offset;
+        System.arraycopy(input, offset, pending, 0, pendingLength);
+    }
+
+    @Override
+    protected byte[] engineDigest() {
+        long hash;
+        if (totalLength >= STRIPE) {
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7)
+                    + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        } else {
+            hash = v3 + PRIME5;
+        }
+        hash += totalLength;
+        int i = 0;
+        for (; i + 8 <= pendingLength; i += 8) {
+            hash ^= round(0, readLong(pending, i));
+            hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+        }
+        if (i + 4 <= pendingLength) {
+            hash ^= (readInt(pending, i) & 0xFFFFFFFFL) * PRIME1;
+            hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+            i += 4;
+        }
+        for (; i < pendingLength; i += 1) {
+            hash ^= (pending[i] & 0xFF) * PRIME5;
+            hash = Long.rotateLeft(hash, 11) * PRIME1;
+        }
+        hash ^= hash >>> 33;
+        hash *= PRIME2;
+        hash ^= hash >>> 29;
+        hash *= PRIME3;
+        hash ^= hash >>> 32;
+
+        byte[] digest = new byte[8];
+        for (int b = 7; b >= 0; b -= 1) {
+            digest[b] = (byte) hash;
+            hash >>>= 8;
+        }
+        engineReset();
+        return digest;
+    }
+
+    private void consumeStripe(byte[] input, int offset) {
+        v1 = round(v1, readLong(input, offset));
+        v2 = round(v2, readLong(input, offset + 8));
+        v3 = round(v3, readLong(input, offset + 16));
+        v4 = round(v4, readLong(input, offset + 24));
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME1;
+    }
+
+    private static long mergeRound(long acc, long val) {
+        acc ^= round(0, val);
+        return acc * PRIME1 + PRIME4;
+    }
+
+    /** Reads a little-endian long from BYTES at OFFSET. */
+    private static long readLong(byte[] bytes, int offset) {
+        return (long) LONG_LE.get(bytes, offset);
+    }
+
+    /** Reads a little-endian int from BYTES at OFFSET. */
+    private static int readInt(byte[] bytes, int offset) {
+        return (int) INT_LE.get(bytes, offset);
+    }
+}
@@ -60,7 +60,9 @@ The instructions each have one of the following forms:
           its output with LINE1, LINE2, etc., reporting an error if there is
           "sufficient" discrepency.  The <<< delimiter may be followed by
           an asterisk (*), in which case, the preceding lines are treated as 
-          Python regular expressions and matched accordingly. The directory
+          Python regular expressions and matched accordingly. It may then be
+          followed by a number N, as in "<<< 1" or "<<<* 1", in which case
+          gitlet.Main must exit with status N rather than 0. The directory
           or JAR file containing the gitlet.Main program is assumed to be
           in directory DIR specifed by --progdir (default is ..).
    = NAME F
@@ -156,7 +158,7 @@ def doCopy(dest, src, dir):
     except OSError:
         raise ValueError("file {} could not be copied to {}".format(src, dest))
 
-def doExecute(cmnd, dir, timeout, line_num):
+def doExecute(cmnd, dir, timeout, line_num, status=0):
     here = getcwd()
     out = ""
     try:
@@ -177,8 +179,12 @@ def doExecute(cmnd, dir, timeout, line_num):
                 timeout, skip_first_line = None, True
 
         out = doCommand(full_cmnd, timeout, skip_first_line)
+        if status != 0:
+            return "java gitlet.Main exited with code 0", out
         return "OK", out
     except CalledProcessError as excp:
+        if excp.returncode == status:
+            return "OK", excp.output
         return ("java gitlet.Main exited with code {}".format(excp.args[0]),
                 excp.output)
     except TimeoutExpired:
@@ -347,11 +353,12 @@ def doTest(test):
                         raise ValueError("unterminated command: {}"
                                          .format(line))
                     L = L.rstrip()
-                    if Match(r'<<<(\*?)', L):
+                    if Match(r'<<<(\*?)\s*(\d*)', L):
                         is_regexp = Group(1)
+                        status = int(Group(2) or 0)
                         break
                     expected.append(do_substs(L))
-                msg, out = doExecute(cmnd, cdir, timeout, line_num)
+                msg, out = doExecute(cmnd, cdir, timeout, line_num, status)
                 if verbose:
                     if out:
                         print(re.sub(r'(?m)^', '- ', chop_nl(out)))